@@ -0,0 +1,116 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Arrays;
+import java.util.Objects;
+
+import svgl.benchmarks.Target;
+
+
+/**
+ * Implementation of the benchmark target in the default package, where it can call the library directly.
+ * 
+ * SVG.findTags() is private, it's called by reflection. The overhead of one reflective call is negligible compared to scanning a document.
+ */
+public class BenchmarkTarget implements Target {
+
+
+	private final SVG scanner = new SVG(ByteBuffer.wrap("<svg/>".getBytes(StandardCharsets.UTF_8)));
+	private final Method findTags;
+	private final PathLexer lexer = new PathLexer();
+	
+	// Every drawn vertex is added here, so the JIT compiler can't remove drawing
+	private double checksum;
+
+
+	public BenchmarkTarget() throws ReflectiveOperationException {
+		findTags = SVG.class.getDeclaredMethod("findTags", CharSequence.class);
+		findTags.setAccessible(true);
+	}
+
+
+	@Override
+	public Object parse(File file) {
+		return new SVG(file);
+	}
+
+
+	@Override
+	public boolean streamsLikeParse(File file, Object svg) throws IOException {
+		SVG.Path[] parsed = ((SVG)svg).getPaths();
+		int[] streamed = {0};
+		boolean[] same = {true};
+		try(InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+			SVG.stream(in, path -> {
+				int x = streamed[0]++;
+				same[0] &= x < parsed.length && Objects.equals(path.getId(), parsed[x].getId()) && path.getTransform().equals(parsed[x].getTransform())
+						&& Arrays.equals(path.getLetters(), parsed[x].getLetters()) && Arrays.equals(path.getCoordinates(), parsed[x].getCoordinates());
+			});
+		}
+		return same[0] && streamed[0] == parsed.length;
+	}
+
+
+	@Override
+	public int findTags(String document) {
+		try {return ((List<?>)findTags.invoke(scanner, document)).size();}
+		catch(IllegalAccessException e) {throw new IllegalStateException(e);}
+		catch(InvocationTargetException e) {throw new IllegalStateException(e.getCause());}
+	}
+
+
+	@Override
+	public int parsePathData(String[] pathData) {
+		int commands = 0;
+		for(String data : pathData) {
+			lexer.parse(data, 0, data.length());
+			commands += lexer.getCommandCount();
+		}
+		return commands;
+	}
+
+
+	@Override
+	public int cubic(double[] c, int points, double[] x, double[] y) {
+		return SVG.getCBezierPoints(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7], points, x, y, 0);
+	}
+
+
+	@Override
+	public int quad(double[] c, int points, double[] x, double[] y) {
+		return SVG.getQBezierPoints(c[0], c[1], c[2], c[3], c[4], c[5], points, x, y, 0);
+	}
+
+
+	@Override
+	public int arc(double[] a, int points, double[] x, double[] y) {
+		return SVG.getArcPoints(a[0], a[1], a[2], a[3], a[4], a[5], a[6], points, x, y, 0);
+	}
+
+
+	@Override
+	public double draw(Object svg, double tolerance) {
+		checksum = 0;
+		((SVG)svg).drawPolylines(tolerance, (xs, ys, count, closed) -> {
+			for(int i = 0;i < count;i++) checksum += xs[i] - ys[i];
+		});
+		return checksum;
+	}
+
+
+	@Override
+	public double drawLines(Object svg, int curvePoints) {
+		checksum = 0;
+		((SVG)svg).draw(curvePoints, (x1, y1, x2, y2) -> checksum += x1 - y2);
+		return checksum;
+	}
+
+
+}
@@ -0,0 +1,66 @@
+package svgl.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Curve evaluators writing into reused buffers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CurveBenchmark {
+
+
+	@Param({"8", "64", "512"})
+	public int points;
+
+	private final Target target = Target.get();
+	private final double[] cubic = {0, 0, 30, 120, 170, -40, 200, 80};
+	private final double[] quad = {0, 0, 100, 150, 200, 0};
+	private final double[] arc = {100, 100, 80, 40, 30, 0.3, 4.5};
+	private double[] x, y;
+
+
+	@Setup(Level.Trial)
+	public void allocate() {
+		x = new double[points];
+		y = new double[points];
+	}
+
+
+	@Benchmark
+	public int cubic() {
+		return target.cubic(cubic, points, x, y);
+	}
+
+
+	@Benchmark
+	public int quad() {
+		return target.quad(quad, points, x, y);
+	}
+
+
+	@Benchmark
+	public int arc() {
+		return target.arc(arc, points, x, y);
+	}
+
+
+}
@@ -0,0 +1,50 @@
+package svgl.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+
+/**
+ * Generated document shared by all iterations of a benchmark. It's written to a temporary file for benchmarks of the file constructor.
+ * Before measuring, the document is streamed too, and the trial fails if streaming and parsing give different paths.
+ */
+@State(Scope.Benchmark)
+public class Documents {
+
+
+	@Param({"ICON", "PAGE", "MAP"})
+	public SvgGenerator.Size size;
+
+	public String document;
+	public File file;
+	public Object svg;
+	public final Target target = Target.get();
+
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		document = new SvgGenerator(42).document(size);
+		file = File.createTempFile("svgl-" + size.name().toLowerCase() + "-", ".svg");
+		file.deleteOnExit();
+		Files.write(file.toPath(), document.getBytes(StandardCharsets.UTF_8));
+		svg = target.parse(file);
+		if(!target.streamsLikeParse(file, svg)) throw new IllegalStateException("Streamed paths differ from parsed paths of the " + size + " document");
+	}
+
+
+	@TearDown(Level.Trial)
+	public void delete() {
+		file.delete();
+	}
+
+
+}
@@ -0,0 +1,37 @@
+package svgl.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Drawing parsed documents: adaptive flattening into polylines and fixed flattening into single lines.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class DrawBenchmark {
+
+
+	@Benchmark
+	public double tolerance(Documents documents) {
+		return documents.target.draw(documents.svg, 0.25);
+	}
+
+
+	@Benchmark
+	public double curvePoints(Documents documents) {
+		return documents.target.drawLines(documents.svg, 20);
+	}
+
+
+}
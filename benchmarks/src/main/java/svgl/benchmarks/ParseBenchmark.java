@@ -0,0 +1,66 @@
+package svgl.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Parsing: the whole file constructor, the tag scan alone and path data alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ParseBenchmark {
+
+
+	/**
+	 * Values of d attributes parsed by one invocation.
+	 */
+	@State(Scope.Benchmark)
+	public static class PathData {
+
+		@Param({"1000"})
+		public int count;
+
+		public String[] data;
+
+		@Setup(Level.Trial)
+		public void generate() {
+			data = new SvgGenerator(7).pathData(count);
+		}
+	}
+
+
+	@Benchmark
+	public Object constructor(Documents documents) {
+		return documents.target.parse(documents.file);
+	}
+
+
+	@Benchmark
+	public int findTags(Documents documents) {
+		return documents.target.findTags(documents.document);
+	}
+
+
+	@Benchmark
+	public int pathData(Documents documents, PathData pathData) {
+		return documents.target.parsePathData(pathData.data);
+	}
+
+
+}
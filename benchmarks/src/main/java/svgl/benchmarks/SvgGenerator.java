@@ -0,0 +1,133 @@
+package svgl.benchmarks;
+
+import java.util.Locale;
+import java.util.Random;
+
+
+/**
+ * Generates synthetic SVG documents for benchmarks.
+ *
+ * Documents are made of chains of nested groups with transforms, every innermost group holds a few paths. Paths mix all
+ * commands of path data (absolute and relative lines, H and V lines, cubic and quadratic curves with their smooth forms,
+ * arcs and Z), so every branch of the parser and the flattener is exercised. Blocks of groups are separated by comments.
+ * The same seed always gives the same document.
+ */
+public final class SvgGenerator {
+
+
+	/**
+	 * Sizes of generated documents.
+	 */
+	public enum Size {
+
+		// A small icon, about 2 kB
+		ICON(12, 2, 4),
+
+		// A page of a document, about 1 MB
+		PAGE(5000, 8, 8),
+
+		// A huge map, about 100 MB, with deeply nested groups
+		MAP(500000, 64, 16);
+
+		final int paths, depth, pathsPerGroup;
+
+		Size(int paths, int depth, int pathsPerGroup) {
+			this.paths = paths;
+			this.depth = depth;
+			this.pathsPerGroup = pathsPerGroup;
+		}
+	}
+
+
+	private final Random random;
+
+
+	public SvgGenerator(long seed) {
+		random = new Random(seed);
+	}
+
+
+	/**
+	 * Generates a whole document.
+	 *
+	 * @param size The size of the document
+	 * @return The document
+	 */
+	public String document(Size size) {
+		StringBuilder svg = new StringBuilder(size.paths * 220);
+		svg.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" width=\"4096\" height=\"4096\" viewBox=\"0 0 4096 4096\">\n");
+		int written = 0;
+		while(written < size.paths) {
+			for(int level = 0;level < size.depth;level++) svg.append("<g transform=\"").append(transform()).append("\">");
+			svg.append('\n');
+			for(int x = 0;x < size.pathsPerGroup && written < size.paths;x++, written++) {
+				svg.append("<path id=\"p").append(written).append("\" style=\"fill:none;stroke:#000\" d=\"").append(pathData()).append("\"/>\n");
+			}
+			for(int level = 0;level < size.depth;level++) svg.append("</g>");
+			// Comments between blocks, including the empty one, whose end overlaps its start
+			svg.append("<!-- block --><!---->\n");
+		}
+		svg.append("</svg>\n");
+		return svg.toString();
+	}
+
+
+	/**
+	 * Generates values of d attributes.
+	 *
+	 * @param count The number of values
+	 * @return The values
+	 */
+	public String[] pathData(int count) {
+		String[] data = new String[count];
+		for(int x = 0;x < count;x++) data[x] = pathData();
+		return data;
+	}
+
+
+	// Small transforms, so deeply nested paths stay near the canvas
+	private String transform() {
+		switch(random.nextInt(4)) {
+		case 0: return format("translate(%.2f %.2f)", random.nextDouble() * 8 - 4, random.nextDouble() * 8 - 4);
+		case 1: return format("rotate(%.2f)", random.nextDouble() * 2 - 1);
+		case 2: return format("scale(%.4f)", 0.99 + random.nextDouble() * 0.02);
+		default: return format("matrix(1 %.3f %.3f 1 %.2f %.2f)", random.nextDouble() * 0.01, random.nextDouble() * 0.01, random.nextDouble() * 4 - 2, random.nextDouble() * 4 - 2);
+		}
+	}
+
+
+	// A path of about 200 characters
+	private String pathData() {
+		StringBuilder d = new StringBuilder(256);
+		d.append(format("M%.2f %.2f", random.nextDouble() * 4096, random.nextDouble() * 4096));
+		int segments = 4 + random.nextInt(5);
+		for(int x = 0;x < segments;x++) {
+			switch(random.nextInt(9)) {
+			case 0: d.append(format("L%.2f %.2f", random.nextDouble() * 4096, random.nextDouble() * 4096)); break;
+			case 1: d.append(format("l%.2f,%.2f", delta(), delta())); break;
+			case 2: d.append(format("h%.2fv%.2f", delta(), delta())); break;
+			case 3: d.append(format("c%.2f %.2f %.2f %.2f %.2f %.2f", delta(), delta(), delta(), delta(), delta(), delta())); break;
+			case 4: d.append(format("s%.2f %.2f %.2f %.2f", delta(), delta(), delta(), delta())); break;
+			case 5: d.append(format("q%.2f %.2f %.2f %.2f", delta(), delta(), delta(), delta())); break;
+			case 6: d.append(format("t%.2f %.2f", delta(), delta())); break;
+			case 7: d.append(format("a%.2f %.2f %.1f %d %d %.2f %.2f", 5 + random.nextDouble() * 40, 5 + random.nextDouble() * 40, random.nextDouble() * 90, random.nextInt(2), random.nextInt(2), delta(), delta())); break;
+			default: d.append(format("C%.2f %.2f %.2f %.2f %.2f %.2f", random.nextDouble() * 4096, random.nextDouble() * 4096, random.nextDouble() * 4096, random.nextDouble() * 4096, random.nextDouble() * 4096, random.nextDouble() * 4096)); break;
+			}
+		}
+		if(random.nextBoolean()) d.append('z');
+		return d.toString();
+	}
+
+
+	private double delta() {
+		return random.nextDouble() * 100 - 50;
+	}
+
+
+	private static String format(String format, Object... arguments) {
+		return String.format(Locale.ROOT, format, arguments);
+	}
+
+
+}
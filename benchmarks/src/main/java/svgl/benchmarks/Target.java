@@ -0,0 +1,100 @@
+package svgl.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+
+/**
+ * Operations of the library measured by the benchmarks.
+ *
+ * Library classes are in the default package, which can't be imported by benchmarks, and JMH doesn't generate benchmarks
+ * in the default package. So benchmarks call the library through this interface, implemented by BenchmarkTarget in the default package.
+ * There is only one implementation, calls are inlined by the JIT compiler like direct calls.
+ */
+public interface Target {
+
+
+	/**
+	 * Returns the implementation of the interface.
+	 *
+	 * @return The target
+	 */
+	static Target get() {
+		try {return (Target)Class.forName("BenchmarkTarget").getDeclaredConstructor().newInstance();}
+		catch(ReflectiveOperationException e) {throw new IllegalStateException("BenchmarkTarget isn't on the class path", e);}
+	}
+
+
+	/**
+	 * Parses the file with the SVG(File) constructor.
+	 *
+	 * @return The SVG object
+	 */
+	Object parse(File file);
+
+
+	/**
+	 * Streams the file with SVG.stream() and compares every streamed path with the path of the parsed SVG: id, transform and commands.
+	 *
+	 * @return True if streaming gives the same paths as parsing
+	 */
+	boolean streamsLikeParse(File file, Object svg) throws IOException;
+
+
+	/**
+	 * Finds all tags of the document, without parsing paths.
+	 *
+	 * @return The number of tags
+	 */
+	int findTags(String document);
+
+
+	/**
+	 * Parses values of d attributes into packed commands.
+	 *
+	 * @return The total number of commands
+	 */
+	int parsePathData(String[] pathData);
+
+
+	/**
+	 * Divides the cubic Bezier curve {x1, y1, x2, y2, x3, y3, x4, y4} into points written into the buffers.
+	 *
+	 * @return The index after the last point
+	 */
+	int cubic(double[] curve, int points, double[] x, double[] y);
+
+
+	/**
+	 * Divides the quadratic Bezier curve {x1, y1, x2, y2, x3, y3} into points written into the buffers.
+	 *
+	 * @return The index after the last point
+	 */
+	int quad(double[] curve, int points, double[] x, double[] y);
+
+
+	/**
+	 * Divides the arc {cx, cy, rx, ry, phi, t1, dt} into points written into the buffers.
+	 *
+	 * @return The index after the last point
+	 */
+	int arc(double[] arc, int points, double[] x, double[] y);
+
+
+	/**
+	 * Draws the SVG with adaptive flattening.
+	 *
+	 * @return A checksum of drawn vertices
+	 */
+	double draw(Object svg, double tolerance);
+
+
+	/**
+	 * Draws the SVG with a fixed number of points of every curve, line by line with DrawLineMethod.
+	 *
+	 * @return A checksum of drawn lines
+	 */
+	double drawLines(Object svg, int curvePoints);
+
+
+}
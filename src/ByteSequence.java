@@ -0,0 +1,70 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * A view of UTF-8 encoded bytes as a character sequence, which doesn't decode or copy anything.
+ *
+ * Every byte is one character, so length() and indexes count bytes. It's enough for scanning markup and path data,
+ * which consist of ASCII characters, because bytes of multi-byte UTF-8 characters are never mistaken for ASCII ones.
+ * toString() decodes the bytes as UTF-8, so text of the view (e.g. an attribute value) comes out correctly.
+ *
+ * With a memory-mapped buffer, the document stays outside of the heap.
+ */
+final class ByteSequence implements CharSequence {
+
+
+	private final ByteBuffer buffer;
+	private final int offset, length;
+
+
+	/**
+	 * Creates a view of bytes between position and limit of the buffer. The position of the buffer isn't changed.
+	 *
+	 * @param buffer The buffer holding the bytes
+	 */
+	ByteSequence(ByteBuffer buffer) {
+		this(buffer, buffer.position(), buffer.remaining());
+	}
+
+
+	private ByteSequence(ByteBuffer buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+	}
+
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+
+	@Override
+	public char charAt(int index) {
+		return (char)(buffer.get(offset + index) & 0xFF);
+	}
+
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if(start < 0 || end > length || start > end) throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of length " + length);
+		return new ByteSequence(buffer, offset + start, end - start);
+	}
+
+
+	/**
+	 * Decodes the bytes of this view as UTF-8.
+	 *
+	 * @return The decoded text
+	 */
+	@Override
+	public String toString() {
+		byte[] bytes = new byte[length];
+		buffer.get(offset, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+}
@@ -0,0 +1,340 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+
+/**
+ * Binary compiled form of an SVG, which is memory-mapped and used without parsing.
+ *
+ * All numbers are little endian. The file starts with a header of HEADER_SIZE bytes, followed by sections, whose offsets are in the header:
+ *
+ * 0    int     magic "SVGL"
+ * 4    int     format version
+ * 8    double  width, height, viewBox x1, y1, x2, y2
+ * 56   int     flags, bit 0 is set if there is a viewBox
+ * 60   int     string index of version, string index of id (-1 is null)
+ * 68   int     number of paths, matrices and strings
+ * 80   long    number of commands and coordinates
+ * 96   long    offsets of sections: path table, matrices, coordinates, command offsets, letters, strings, and length of the file
+ *
+ * Path table has a record of PATH_RECORD_SIZE bytes per path: string indexes of type, style and id, matrix index (-1 is identity),
+ * number of commands, number of coordinates, index of the first command and index of the first coordinate of the path.
+ * Matrices are 6 doubles each, shared by all paths of a group. Coordinates are doubles of all paths one after another.
+ * Command offsets are ints, commandCount + 1 per path, relative to the first coordinate of the path. Letters are the command letters,
+ * one byte per command, they're the opcodes of the format. Strings are an int byte length followed by UTF-8 bytes, every distinct string is stored once.
+ * Sections holding doubles start at multiples of 8 bytes, so they're aligned in the mapped file.
+ *
+ * Opening reads only the header, matrices, strings and creates paths. Commands of a path are copied from the mapping when the path is used for the first time.
+ * They're copied, because packed arrays of a path are the only form of commands all walkers, caches and writers read, and a copy is a bulk read
+ * of one path done once. The file isn't trusted: every offset, count and index is checked against the size of the file before it's used,
+ * so a corrupt file fails with an IOException instead of reading outside of its sections.
+ */
+final class CompiledFormat {
+
+
+	static final int MAGIC = 'S' | 'V' << 8 | 'G' << 16 | 'L' << 24;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 152;
+	static final int PATH_RECORD_SIZE = 32;
+
+	private static final int FLAG_VIEW_BOX = 1;
+
+
+	private CompiledFormat() {
+	}
+
+
+	/**
+	 * Writes the SVG in the compiled form. Commands of lazily parsed paths are parsed first.
+	 *
+	 * @param svg The SVG
+	 * @param out The stream, which is not closed
+	 * @throws IOException If the stream fails
+	 */
+	static void write(SVG svg, OutputStream out) throws IOException {
+		SVG.Path[] paths = svg.getPaths();
+
+		// Distinct strings and matrices get indexes
+		ArrayList<byte[]> strings = new ArrayList<byte[]>();
+		HashMap<String, Integer> stringIndexes = new HashMap<String, Integer>();
+		ArrayList<double[]> matrices = new ArrayList<double[]>();
+		IdentityHashMap<double[], Integer> matrixIndexes = new IdentityHashMap<double[], Integer>();
+		int versionIndex = index(svg.getVersion(), strings, stringIndexes);
+		int idIndex = index(svg.getId(), strings, stringIndexes);
+		long commands = 0, coordinates = 0;
+		for(SVG.Path path : paths) {
+			index(path.getType(), strings, stringIndexes);
+			index(path.getStyle(), strings, stringIndexes);
+			index(path.getId(), strings, stringIndexes);
+			double[] matrix = path.getMatrix();
+			if(matrix != null && !matrixIndexes.containsKey(matrix)) {
+				matrixIndexes.put(matrix, matrices.size());
+				matrices.add(matrix);
+			}
+			commands += path.getLetters().length;
+			coordinates += path.getCoordinates().length;
+		}
+		long stringBytes = 0;
+		for(byte[] string : strings) stringBytes += 4 + string.length;
+
+		// Layout of sections
+		long pathTable = HEADER_SIZE;
+		long matricesOffset = pathTable + (long)PATH_RECORD_SIZE * paths.length;
+		long coordinatesOffset = matricesOffset + 48L * matrices.size();
+		long offsetsOffset = coordinatesOffset + 8 * coordinates;
+		long lettersOffset = offsetsOffset + 4 * (commands + paths.length);
+		long stringsOffset = lettersOffset + commands;
+		long length = stringsOffset + stringBytes;
+		if(length > Integer.MAX_VALUE) throw new IOException("Compiled SVG would be larger than 2 GB");
+
+		Writer writer = new Writer(out);
+		writer.putInt(MAGIC);
+		writer.putInt(VERSION);
+		writer.putDouble(svg.getWidth());
+		writer.putDouble(svg.getHeight());
+		SVG.ViewBox viewBox = svg.getViewBox();
+		writer.putDouble(viewBox == null ? 0 : viewBox.getX1());
+		writer.putDouble(viewBox == null ? 0 : viewBox.getY1());
+		writer.putDouble(viewBox == null ? 0 : viewBox.getX2());
+		writer.putDouble(viewBox == null ? 0 : viewBox.getY2());
+		writer.putInt(viewBox == null ? 0 : FLAG_VIEW_BOX);
+		writer.putInt(versionIndex);
+		writer.putInt(idIndex);
+		writer.putInt(paths.length);
+		writer.putInt(matrices.size());
+		writer.putInt(strings.size());
+		writer.putLong(commands);
+		writer.putLong(coordinates);
+		writer.putLong(pathTable);
+		writer.putLong(matricesOffset);
+		writer.putLong(coordinatesOffset);
+		writer.putLong(offsetsOffset);
+		writer.putLong(lettersOffset);
+		writer.putLong(stringsOffset);
+		writer.putLong(length);
+
+		long commandStart = 0, coordinateStart = 0;
+		for(SVG.Path path : paths) {
+			writer.putInt(index(path.getType(), strings, stringIndexes));
+			writer.putInt(index(path.getStyle(), strings, stringIndexes));
+			writer.putInt(index(path.getId(), strings, stringIndexes));
+			writer.putInt(path.getMatrix() == null ? -1 : matrixIndexes.get(path.getMatrix()));
+			writer.putInt(path.getLetters().length);
+			writer.putInt(path.getCoordinates().length);
+			writer.putInt((int)commandStart);
+			writer.putInt((int)coordinateStart);
+			commandStart += path.getLetters().length;
+			coordinateStart += path.getCoordinates().length;
+		}
+		for(double[] matrix : matrices) for(double value : matrix) writer.putDouble(value);
+		for(SVG.Path path : paths) for(double value : path.getCoordinates()) writer.putDouble(value);
+		for(SVG.Path path : paths) for(int offset : path.getOffsets()) writer.putInt(offset);
+		for(SVG.Path path : paths) writer.put(path.getLetters());
+		for(byte[] string : strings) {
+			writer.putInt(string.length);
+			writer.put(string);
+		}
+		writer.flush();
+	}
+
+
+	/**
+	 * Maps the compiled file and fills the empty SVG with its header and paths.
+	 *
+	 * @param svg The SVG to be filled
+	 * @param file The compiled file
+	 * @throws IOException If the file can't be read, or isn't a compiled SVG of a supported version
+	 */
+	static void open(SVG svg, java.nio.file.Path file) throws IOException {
+		ByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE) throw new IOException("Compiled SVG is too large: " + file);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new IOException("Not a compiled SVG: " + file);
+		if(buffer.getInt(4) != VERSION) throw new IOException("Unsupported version " + buffer.getInt(4) + " of compiled SVG: " + file);
+		if(buffer.getLong(144) != buffer.capacity()) throw new IOException("Compiled SVG is truncated: " + file);
+
+		// Sections must lie in the file after the header, so counts are limited by the size of the file before anything is allocated
+		long commands = buffer.getLong(80), coordinates = buffer.getLong(88);
+		int pathCount = buffer.getInt(68);
+		int matrixCount = buffer.getInt(72);
+		int stringCount = buffer.getInt(76);
+		check(buffer, 96, pathCount, PATH_RECORD_SIZE, 4, file);
+		check(buffer, 104, matrixCount, 48, 8, file);
+		check(buffer, 112, coordinates, 8, 8, file);
+		check(buffer, 128, commands, 1, 1, file);
+		check(buffer, 120, commands + pathCount, 4, 4, file);
+		int position = (int)check(buffer, 136, stringCount, 4, 1, file);
+		Document document = new Document(buffer, file);
+
+		String[] strings = new String[stringCount];
+		for(int x = 0;x < stringCount;x++) {
+			int length = position > buffer.capacity() - 4 ? -1 : buffer.getInt(position);
+			if(length < 0 || length > buffer.capacity() - position - 4) throw corrupt(file, "string " + x + " doesn't fit in the file");
+			byte[] bytes = new byte[length];
+			buffer.get(position + 4, bytes);
+			strings[x] = new String(bytes, StandardCharsets.UTF_8);
+			position += 4 + bytes.length;
+		}
+		double[][] matrices = new double[matrixCount][];
+		int matricesOffset = (int)buffer.getLong(104);
+		for(int x = 0;x < matrixCount;x++) {
+			matrices[x] = new double[6];
+			for(int k = 0;k < 6;k++) matrices[x][k] = buffer.getDouble(matricesOffset + 48 * x + 8 * k);
+		}
+
+		SVG.ViewBox viewBox = (buffer.getInt(56) & FLAG_VIEW_BOX) == 0 ? null : svg.new ViewBox(buffer.getDouble(24), buffer.getDouble(32), buffer.getDouble(40), buffer.getDouble(48));
+		svg.setHeader(buffer.getDouble(8), buffer.getDouble(16), viewBox, string(strings, buffer.getInt(60), file), string(strings, buffer.getInt(64), file));
+
+		SVG.Path[] paths = new SVG.Path[pathCount];
+		for(int x = 0;x < pathCount;x++) {
+			int record = document.pathTable + PATH_RECORD_SIZE * x;
+			paths[x] = svg.new Path();
+			paths[x].setAttributes(string(strings, buffer.getInt(record), file), string(strings, buffer.getInt(record + 4), file), string(strings, buffer.getInt(record + 8), file));
+			int matrix = buffer.getInt(record + 12);
+			if(matrix < -1 || matrix >= matrixCount) throw corrupt(file, "path " + x + " has matrix " + matrix + " of " + matrixCount);
+			paths[x].setMatrix(matrix < 0 ? null : matrices[matrix]);
+			// Commands and coordinates of the path must lie in their sections, its offsets are checked when it's loaded
+			int commandCount = buffer.getInt(record + 16), coordinateCount = buffer.getInt(record + 20);
+			int commandStart = buffer.getInt(record + 24), coordinateStart = buffer.getInt(record + 28);
+			if(commandCount < 0 || commandStart < 0 || (long)commandStart + commandCount > commands
+					|| coordinateCount < 0 || coordinateStart < 0 || (long)coordinateStart + coordinateCount > coordinates) {
+				throw corrupt(file, "commands of path " + x + " lie outside of their sections");
+			}
+			paths[x].setLoader(new Loader(document, x));
+		}
+		svg.setPaths(paths);
+	}
+
+
+	private static String string(String[] strings, int index, java.nio.file.Path file) throws IOException {
+		if(index < -1 || index >= strings.length) throw corrupt(file, "string index " + index + " of " + strings.length);
+		return index < 0 ? null : strings[index];
+	}
+
+
+	// Checks that the section, whose offset is in the header at the position, holds count items of size bytes within the file, returns its offset
+	private static long check(ByteBuffer buffer, int header, long count, int size, int alignment, java.nio.file.Path file) throws IOException {
+		long offset = buffer.getLong(header);
+		if(offset < HEADER_SIZE || offset > buffer.capacity() || offset % alignment != 0) throw corrupt(file, "section offset " + offset + " at " + header);
+		if(count < 0 || count > (buffer.capacity() - offset) / size) throw corrupt(file, "section at " + header + " can't hold " + count + " items");
+		return offset;
+	}
+
+
+	private static IOException corrupt(java.nio.file.Path file, String reason) {
+		return new IOException("Corrupt compiled file " + file + ": " + reason);
+	}
+
+
+	private static int index(String string, ArrayList<byte[]> strings, HashMap<String, Integer> indexes) {
+		if(string == null) return -1;
+		Integer index = indexes.get(string);
+		if(index == null) {
+			index = strings.size();
+			indexes.put(string, index);
+			strings.add(string.getBytes(StandardCharsets.UTF_8));
+		}
+		return index;
+	}
+
+
+	/**
+	 * Mapped file and offsets of its sections, shared by loaders of all paths.
+	 */
+	private static final class Document {
+		final ByteBuffer buffer;
+		final java.nio.file.Path file;
+		final int pathTable, coordinates, offsets, letters;
+		Document(ByteBuffer buffer, java.nio.file.Path file) {
+			this.buffer = buffer;
+			this.file = file;
+			pathTable = (int)buffer.getLong(96);
+			coordinates = (int)buffer.getLong(112);
+			offsets = (int)buffer.getLong(120);
+			letters = (int)buffer.getLong(128);
+		}
+	}
+
+
+	/**
+	 * Copies commands of one path from the mapped file. Only absolute reads of the buffer are used, so paths can be loaded concurrently.
+	 * Sections of the path were checked by open(), offsets are checked here, so walkers never index outside of the coordinates.
+	 */
+	private static final class Loader implements SVG.PathLoader {
+		private final Document document;
+		private final int index;
+		Loader(Document document, int index) {
+			this.document = document;
+			this.index = index;
+		}
+		@Override
+		public void load(SVG.Path path) {
+			ByteBuffer buffer = document.buffer;
+			int record = document.pathTable + PATH_RECORD_SIZE * index;
+			int commandCount = buffer.getInt(record + 16);
+			int coordinateCount = buffer.getInt(record + 20);
+			int commandStart = buffer.getInt(record + 24);
+			int coordinateStart = buffer.getInt(record + 28);
+			byte[] letters = new byte[commandCount];
+			buffer.get(document.letters + commandStart, letters);
+			int[] offsets = new int[commandCount + 1];
+			buffer.asIntBuffer().get((document.offsets >> 2) + commandStart + index, offsets);
+			double[] coordinates = new double[coordinateCount];
+			buffer.asDoubleBuffer().get((document.coordinates >> 3) + coordinateStart, coordinates);
+			boolean ascending = offsets[0] == 0 && offsets[commandCount] == coordinateCount;
+			for(int x = 0;x < commandCount;x++) ascending &= offsets[x] <= offsets[x + 1];
+			if(!ascending) throw new UncheckedIOException(corrupt(document.file, "offsets of commands of path " + index + " don't match its coordinates"));
+			path.setData(letters, offsets, coordinates);
+		}
+	}
+
+
+	/**
+	 * Writes little endian numbers to the stream through a buffer.
+	 */
+	private static final class Writer {
+		private final OutputStream out;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		Writer(OutputStream out) {
+			this.out = out;
+		}
+		void putInt(int value) throws IOException {
+			reserve(4);
+			buffer.putInt(value);
+		}
+		void putLong(long value) throws IOException {
+			reserve(8);
+			buffer.putLong(value);
+		}
+		void putDouble(double value) throws IOException {
+			reserve(8);
+			buffer.putDouble(value);
+		}
+		void put(byte[] bytes) throws IOException {
+			if(bytes.length <= buffer.remaining()) buffer.put(bytes);
+			else {
+				flush();
+				out.write(bytes);
+			}
+		}
+		void flush() throws IOException {
+			out.write(buffer.array(), 0, buffer.position());
+			buffer.clear();
+		}
+		private void reserve(int bytes) throws IOException {
+			if(buffer.remaining() < bytes) flush();
+		}
+	}
+
+
+}
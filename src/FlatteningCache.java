@@ -0,0 +1,143 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A cache of flattened paths.
+ *
+ * Flattening a path gives polylines, which depend only on the path and on flattening parameters. When the same SVG is drawn
+ * many times at a few levels of detail, the cache keeps these polylines, so repeated draws only replay vertex arrays.
+ * The cache has a memory budget. When it's exceeded, least recently used entries are evicted.
+ *
+ * The cache is opt-in, it's attached to an SVG with SVG.setFlatteningCache(). It's thread safe.
+ */
+public class FlatteningCache {
+
+
+	private final long maxBytes;
+	private long bytes;
+	private long hits, misses, evictions;
+
+	// Access ordered map, its first entry is the least recently used one
+	private final LinkedHashMap<Key, PolylineBuffer> entries = new LinkedHashMap<Key, PolylineBuffer>(16, 0.75f, true);
+
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param maxBytes The memory budget of the cache in bytes. It's an estimate of memory taken by cached vertex arrays.
+	 */
+	public FlatteningCache(long maxBytes) {
+		if(maxBytes < 0) throw new IllegalArgumentException("Memory budget can't be negative: " + maxBytes);
+		this.maxBytes = maxBytes;
+	}
+
+
+	/**
+	 * Returns polylines of the path flattened with the parameters, or null if they aren't cached.
+	 */
+	synchronized PolylineBuffer get(Key key) {
+		PolylineBuffer buffer = entries.get(key);
+		if(buffer == null) misses++;
+		else hits++;
+		return buffer;
+	}
+
+
+	/**
+	 * Puts polylines into the cache and evicts least recently used entries, if the budget is exceeded.
+	 * Polylines larger than the whole budget aren't cached.
+	 */
+	synchronized void put(Key key, PolylineBuffer buffer) {
+		long size = buffer.getBytes() + Key.BYTES;
+		if(size > maxBytes) return;
+		PolylineBuffer previous = entries.put(key, buffer);
+		if(previous != null) bytes -= previous.getBytes() + Key.BYTES;
+		bytes += size;
+		Iterator<PolylineBuffer> iterator = entries.values().iterator();
+		while(bytes > maxBytes && iterator.hasNext()) {
+			bytes -= iterator.next().getBytes() + Key.BYTES;
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+
+	/**
+	 * Removes all entries of the path, for example when the path has been changed.
+	 *
+	 * @param path The path, whose flattened polylines are removed
+	 */
+	public synchronized void remove(SVG.Path path) {
+		Iterator<Map.Entry<Key, PolylineBuffer>> iterator = entries.entrySet().iterator();
+		while(iterator.hasNext()) {
+			Map.Entry<Key, PolylineBuffer> entry = iterator.next();
+			if(entry.getKey().path == path) {
+				bytes -= entry.getValue().getBytes() + Key.BYTES;
+				iterator.remove();
+			}
+		}
+	}
+
+
+	/**
+	 * Removes all entries from the cache. Counters aren't reset.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+
+	// GETTERS
+
+
+	public long getMaxBytes() {return maxBytes;}
+	public synchronized long getBytes() {return bytes;}
+	public synchronized int getEntryCount() {return entries.size();}
+	public synchronized long getHits() {return hits;}
+	public synchronized long getMisses() {return misses;}
+	public synchronized long getEvictions() {return evictions;}
+
+
+	/**
+	 * Key of cached polylines: the path, the flattening parameters and the view transform.
+	 * Paths are compared by identity and revision, parameters and view matrices by value. A changed path has a new revision,
+	 * so its old polylines are never found again and they're evicted like any other unused entry.
+	 */
+	static final class Key {
+
+		// Approximate size of a key and its map entry
+		static final int BYTES = 96;
+
+		private final SVG.Path path;
+		private final int revision;
+		private final int curvePoints;
+		private final double tolerance;
+		private final double[] view;
+
+		Key(SVG.Path path, int curvePoints, double tolerance, double[] view) {
+			this.path = path;
+			this.revision = path.getRevision();
+			this.curvePoints = curvePoints;
+			this.tolerance = tolerance;
+			this.view = view;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if(!(object instanceof Key)) return false;
+			Key key = (Key)object;
+			return path == key.path && revision == key.revision && curvePoints == key.curvePoints && Double.compare(tolerance, key.tolerance) == 0 && Arrays.equals(view, key.view);
+		}
+
+		@Override
+		public int hashCode() {
+			return (((System.identityHashCode(path) * 31 + revision) * 31 + curvePoints) * 31 + Double.hashCode(tolerance)) * 31 + Arrays.hashCode(view);
+		}
+	}
+
+
+}
@@ -0,0 +1,69 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+
+
+/**
+ * Draws paths with Java2D, one shape per path.
+ *
+ * Polylines of a path are accumulated into one Path2D, which is filled and stroked by a single call with the graphics,
+ * so drawing costs one call per path instead of one graphics context per line. The graphics is configured by the caller once.
+ */
+final class Java2DRenderer implements SVG.PolylineSink {
+
+
+	private final Graphics2D graphics;
+	private final Color fill, stroke;
+	private final Path2D.Double shape = new Path2D.Double();
+
+
+	/**
+	 * Creates a renderer drawing with the graphics. Its stroke, rendering hints and clip are used as they are.
+	 *
+	 * @param graphics The graphics to draw with
+	 * @param fill The color filling paths or null to draw only their outlines
+	 * @param stroke The color of outlines or null to only fill paths
+	 */
+	Java2DRenderer(Graphics2D graphics, Color fill, Color stroke) {
+		this.graphics = graphics;
+		this.fill = fill;
+		this.stroke = stroke;
+	}
+
+
+	/**
+	 * Draws all paths of the SVG.
+	 *
+	 * @param svg The SVG to be drawn
+	 * @param tolerance The maximum distance between drawn lines and the real curves, in pixels
+	 * @param view The transform from coordinates of the document to pixels or null for identity
+	 */
+	void render(SVG svg, double tolerance, AffineTransform view) {
+		PathFlattener flattener = new PathFlattener(tolerance).setView(view);
+		for(SVG.Path path : svg.getPaths()) {
+			shape.reset();
+			svg.draw(flattener, path, this);
+			if(shape.getCurrentPoint() == null) continue;
+			if(fill != null) {
+				graphics.setColor(fill);
+				graphics.fill(shape);
+			}
+			if(stroke != null) {
+				graphics.setColor(stroke);
+				graphics.draw(shape);
+			}
+		}
+	}
+
+
+	@Override
+	public void polyline(double[] xs, double[] ys, int count, boolean closed) {
+		if(count == 0) return;
+		shape.moveTo(xs[0], ys[0]);
+		for(int i = 1;i < count;i++) shape.lineTo(xs[i], ys[i]);
+		if(closed) shape.closePath();
+	}
+
+
+}
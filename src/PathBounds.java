@@ -0,0 +1,190 @@
+import java.awt.geom.Rectangle2D;
+
+
+/**
+ * Computes exact bounding boxes of paths without flattening them.
+ *
+ * Bounds are made of endpoints of all segments and of extreme points of curves: Bezier curves reach their extremes
+ * where a coordinate of the derivative is zero, arcs where the derivative of x(t) = A cos t + B sin t is zero.
+ * The transform of the path is applied before extremes are found, because an affine transform keeps Bezier curves
+ * Bezier curves and ellipses ellipses, so the box is tight in coordinates of the document.
+ */
+final class PathBounds extends PathWalker {
+
+
+	private double minX, minY, maxX, maxY;
+	private boolean empty;
+
+	// Matrix of the path, null for identity
+	private double[] matrix;
+	private final double[] center = new double[6];
+	private final double[] roots = new double[2];
+
+
+	/**
+	 * Returns the bounding box of the path in coordinates of the document, with the transform of the path applied.
+	 *
+	 * @param path The path
+	 * @return The bounding box, or null if the path has no points
+	 */
+	Rectangle2D getBounds(SVG.Path path) {
+		empty = true;
+		matrix = path.getMatrix();
+		walk(path);
+		return empty ? null : new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+	}
+
+
+	@Override
+	void moveTo(double x, double y) {
+		add(x, y);
+	}
+
+
+	@Override
+	void lineTo(double x, double y) {
+		add(x, y);
+	}
+
+
+	@Override
+	void quadTo(double x1, double y1, double x2, double y2) {
+		add(x2, y2);
+		double sx = transformX(x0, y0), sy = transformY(x0, y0);
+		double cx = transformX(x1, y1), cy = transformY(x1, y1);
+		double ex = transformX(x2, y2), ey = transformY(x2, y2);
+		// B'(t) = 2(1 - t)(P1 - P0) + 2t(P2 - P1) is zero at t = (P0 - P1) / (P0 - 2P1 + P2)
+		double dx = sx - 2 * cx + ex, dy = sy - 2 * cy + ey;
+		if(dx != 0) addQuad((sx - cx) / dx, sx, sy, cx, cy, ex, ey);
+		if(dy != 0) addQuad((sy - cy) / dy, sx, sy, cx, cy, ex, ey);
+	}
+
+
+	@Override
+	void curveTo(double x1, double y1, double x2, double y2, double x3, double y3) {
+		add(x3, y3);
+		double sx = transformX(x0, y0), sy = transformY(x0, y0);
+		double ax = transformX(x1, y1), ay = transformY(x1, y1);
+		double bx = transformX(x2, y2), by = transformY(x2, y2);
+		double ex = transformX(x3, y3), ey = transformY(x3, y3);
+		// B'(t) / 3 = a t^2 + b t + c
+		int count = solve(-sx + 3 * ax - 3 * bx + ex, 2 * (sx - 2 * ax + bx), ax - sx);
+		for(int i = 0;i < count;i++) addCubic(roots[i], sx, sy, ax, ay, bx, by, ex, ey);
+		count = solve(-sy + 3 * ay - 3 * by + ey, 2 * (sy - 2 * ay + by), ay - sy);
+		for(int i = 0;i < count;i++) addCubic(roots[i], sx, sy, ax, ay, bx, by, ex, ey);
+	}
+
+
+	@Override
+	void arcTo(double rx, double ry, double phi, boolean large, boolean sweep, double x, double y) {
+		add(x, y);
+		SVG.getArcCenter(x0, y0, rx, ry, phi, large, sweep, x, y, center);
+		double cosPhi = Math.cos(Math.toRadians(phi));
+		double sinPhi = Math.sin(Math.toRadians(phi));
+		// Point of the ellipse in coordinates of the path: C + (rx cosPhi cos t - ry sinPhi sin t, rx sinPhi cos t + ry cosPhi sin t)
+		double ux = center[2] * cosPhi, uy = center[2] * sinPhi;
+		double vx = -center[3] * sinPhi, vy = center[3] * cosPhi;
+		double cx = center[0], cy = center[1];
+		if(matrix != null) {
+			double x1 = matrix[0] * ux + matrix[2] * uy, y1 = matrix[1] * ux + matrix[3] * uy;
+			double x2 = matrix[0] * vx + matrix[2] * vy, y2 = matrix[1] * vx + matrix[3] * vy;
+			ux = x1;
+			uy = y1;
+			vx = x2;
+			vy = y2;
+			double c = transformX(cx, cy);
+			cy = transformY(cx, cy);
+			cx = c;
+		}
+		// x(t) = cx + ux cos t + vx sin t has extremes at t = atan2(vx, ux) and the opposite angle, y(t) likewise
+		double tx = Math.atan2(vx, ux), ty = Math.atan2(vy, uy);
+		double[] angles = {tx, tx + Math.PI, ty, ty + Math.PI};
+		for(double t : angles) if(inSweep(t, center[4], center[5])) {
+			double cos = Math.cos(t), sin = Math.sin(t);
+			addTransformed(cx + ux * cos + vx * sin, cy + uy * cos + vy * sin);
+		}
+	}
+
+
+	@Override
+	void closePath() {
+	}
+
+
+	// Checks if angle t lies on the arc starting at angle t1 and sweeping by dt
+	private static boolean inSweep(double t, double t1, double dt) {
+		double d = dt >= 0 ? t - t1 : t1 - t;
+		d %= 2 * Math.PI;
+		if(d < 0) d += 2 * Math.PI;
+		return d <= Math.abs(dt);
+	}
+
+
+	// Solves a t^2 + b t + c = 0 and keeps roots between 0 and 1 in the roots array
+	private int solve(double a, double b, double c) {
+		int count = 0;
+		if(Math.abs(a) < 1e-12) {
+			if(b != 0) count = keep(-c / b, count);
+			return count;
+		}
+		double discriminant = b * b - 4 * a * c;
+		if(discriminant < 0) return 0;
+		double sqrt = Math.sqrt(discriminant);
+		count = keep((-b + sqrt) / (2 * a), count);
+		count = keep((-b - sqrt) / (2 * a), count);
+		return count;
+	}
+
+
+	private int keep(double t, int count) {
+		if(t > 0 && t < 1) roots[count++] = t;
+		return count;
+	}
+
+
+	private void addQuad(double t, double x0, double y0, double x1, double y1, double x2, double y2) {
+		if(!(t > 0 && t < 1)) return;
+		double u = 1 - t;
+		addTransformed(u * u * x0 + 2 * u * t * x1 + t * t * x2, u * u * y0 + 2 * u * t * y1 + t * t * y2);
+	}
+
+
+	private void addCubic(double t, double x0, double y0, double x1, double y1, double x2, double y2, double x3, double y3) {
+		double u = 1 - t;
+		double a = u * u * u, b = 3 * u * u * t, c = 3 * u * t * t, d = t * t * t;
+		addTransformed(a * x0 + b * x1 + c * x2 + d * x3, a * y0 + b * y1 + c * y2 + d * y3);
+	}
+
+
+	// Adds a point given in coordinates of the path
+	private void add(double x, double y) {
+		addTransformed(transformX(x, y), transformY(x, y));
+	}
+
+
+	// Adds a point given in coordinates of the document
+	private void addTransformed(double x, double y) {
+		if(empty) {
+			minX = maxX = x;
+			minY = maxY = y;
+			empty = false;
+			return;
+		}
+		if(x < minX) minX = x;
+		if(x > maxX) maxX = x;
+		if(y < minY) minY = y;
+		if(y > maxY) maxY = y;
+	}
+
+
+	private double transformX(double x, double y) {
+		return matrix == null ? x : matrix[0] * x + matrix[2] * y + matrix[4];
+	}
+
+
+	private double transformY(double x, double y) {
+		return matrix == null ? y : matrix[1] * x + matrix[3] * y + matrix[5];
+	}
+
+
+}
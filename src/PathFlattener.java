@@ -0,0 +1,309 @@
+import java.awt.geom.AffineTransform;
+import java.util.Arrays;
+
+
+/**
+ * Flattens paths into polylines.
+ *
+ * Every subpath is collected in a reusable buffer and handed to the sink in one call when it ends,
+ * so every vertex is passed once and the sink is called once per subpath instead of once per line.
+ *
+ * Transform of every path, composed with an optional view transform, is applied while flattening. Control points of Bezier curves
+ * are transformed before curves are divided (affine transforms keep them Bezier curves), arcs are divided in coordinates of the path
+ * and their points are transformed. Tolerance is therefore measured in transformed coordinates, where lines are drawn.
+ *
+ * Curves are divided either into a fixed number of points, or adaptively: the number of segments of every curve
+ * is chosen from its flatness (Bezier curves) or radius (arcs), so that no point of the lines is further than
+ * tolerance from the real curve. Small curves get a few segments and large curves get as many as they need.
+ */
+final class PathFlattener extends PathWalker {
+
+
+	// Upper limit of segments of one curve. It protects from huge curves flattened with tiny tolerance.
+	static final int MAX_CURVE_SEGMENTS = 10000;
+
+	// If curvePoints is greater than 0, every curve gets this number of points, otherwise tolerance is used
+	private final int curvePoints;
+	private final double tolerance;
+
+	// View transform applied after transforms of paths, null for identity
+	private double[] view;
+	
+	// Matrix of the path being flattened and the largest factor it stretches lengths by. Matrix isn't used if transformed is false.
+	private final double[] matrix = new double[6];
+	private boolean transformed;
+	private double scale = 1;
+
+	private SVG.PolylineSink sink;
+	
+	// Vertices of current polyline. Buffers are reused, so flattening allocates nothing once they are large enough.
+	private double[] xs = new double[64], ys = new double[64];
+	private int count;
+	private final double[] center = new double[6];
+
+
+	/**
+	 * Creates a flattener, which divides every curve into the same number of points.
+	 *
+	 * @param curvePoints The number of points of every curve, including its endpoints
+	 */
+	PathFlattener(int curvePoints) {
+		if(curvePoints < 2) throw new IllegalArgumentException("Curve needs at least 2 points: " + curvePoints);
+		this.curvePoints = curvePoints;
+		this.tolerance = 0;
+	}
+
+
+	/**
+	 * Creates a flattener, which divides every curve into as few segments as possible, keeping the maximum error below tolerance.
+	 *
+	 * @param tolerance The maximum distance between lines and the real curve
+	 */
+	PathFlattener(double tolerance) {
+		if(!(tolerance > 0)) throw new IllegalArgumentException("Tolerance must be greater than 0: " + tolerance);
+		this.curvePoints = 0;
+		this.tolerance = tolerance;
+	}
+
+
+	/**
+	 * Creates a new flattener with the same parameters. Flatteners keep state while flattening, so every thread needs its own one.
+	 *
+	 * @return The new flattener
+	 */
+	PathFlattener copy() {
+		PathFlattener copy = curvePoints > 0 ? new PathFlattener(curvePoints) : new PathFlattener(tolerance);
+		copy.view = view;
+		return copy;
+	}
+
+
+	/**
+	 * Sets the view transform, which is applied to every path after its own transform.
+	 *
+	 * @param view The view transform or null for identity
+	 * @return This flattener
+	 */
+	PathFlattener setView(AffineTransform view) {
+		if(view == null || view.isIdentity()) this.view = null;
+		else {
+			this.view = new double[6];
+			view.getMatrix(this.view);
+		}
+		return this;
+	}
+
+
+	/**
+	 * Flattens the path and passes every subpath to the sink as a polyline.
+	 *
+	 * @param path The path to flatten
+	 * @param sink The sink receiving polylines
+	 */
+	void flatten(SVG.Path path, SVG.PolylineSink sink) {
+		this.sink = sink;
+		count = 0;
+		setMatrix(path.getMatrix());
+		try {
+			walk(path);
+			flush(false);
+		}
+		finally {this.sink = null;}
+	}
+
+
+	@Override
+	void moveTo(double x, double y) {
+		flush(false);
+		add(x, y);
+	}
+
+
+	@Override
+	void lineTo(double x, double y) {
+		start();
+		add(x, y);
+	}
+
+
+	@Override
+	void quadTo(double x1, double y1, double x2, double y2) {
+		start();
+		double sx = x0, sy = y0;
+		if(transformed) {
+			double x = x1;
+			x1 = transformX(x, y1);
+			y1 = transformY(x, y1);
+			x = x2;
+			x2 = transformX(x, y2);
+			y2 = transformY(x, y2);
+			sx = xs[count - 1];
+			sy = ys[count - 1];
+		}
+		int points = quadPoints(sx, sy, x1, y1, x2, y2);
+		reserve(count + points);
+		// The first point of the curve is the current point, which is already the last vertex
+		count = SVG.getQBezierPoints(sx, sy, x1, y1, x2, y2, points, xs, ys, count - 1);
+	}
+
+
+	@Override
+	void curveTo(double x1, double y1, double x2, double y2, double x3, double y3) {
+		start();
+		double sx = x0, sy = y0;
+		if(transformed) {
+			double x = x1;
+			x1 = transformX(x, y1);
+			y1 = transformY(x, y1);
+			x = x2;
+			x2 = transformX(x, y2);
+			y2 = transformY(x, y2);
+			x = x3;
+			x3 = transformX(x, y3);
+			y3 = transformY(x, y3);
+			sx = xs[count - 1];
+			sy = ys[count - 1];
+		}
+		int points = cubicPoints(sx, sy, x1, y1, x2, y2, x3, y3);
+		reserve(count + points);
+		count = SVG.getCBezierPoints(sx, sy, x1, y1, x2, y2, x3, y3, points, xs, ys, count - 1);
+	}
+
+
+	@Override
+	void arcTo(double rx, double ry, double phi, boolean large, boolean sweep, double x, double y) {
+		start();
+		SVG.getArcCenter(x0, y0, rx, ry, phi, large, sweep, x, y, center);
+		int points = arcPoints(Math.max(center[2], center[3]) * scale, Math.abs(center[5]));
+		reserve(count + points);
+		int first = count - 1;
+		count = SVG.getArcPoints(center[0], center[1], center[2], center[3], phi, center[4], center[5], points, xs, ys, first);
+		xs[count - 1] = x;
+		ys[count - 1] = y;
+		// Arc is divided in coordinates of the path, its points are transformed afterwards
+		if(transformed) for(int i = first;i < count;i++) {
+			double px = xs[i];
+			xs[i] = transformX(px, ys[i]);
+			ys[i] = transformY(px, ys[i]);
+		}
+	}
+
+
+	@Override
+	void closePath() {
+		start();
+		flush(true);
+	}
+
+
+	// Starts a polyline in the current point, if there is no polyline yet. It happens after closePath() without a following moveTo().
+	private void start() {
+		if(count == 0) add(x0, y0);
+	}
+
+
+	// Adds a vertex given in coordinates of the path
+	private void add(double x, double y) {
+		reserve(count + 1);
+		xs[count] = transformed ? transformX(x, y) : x;
+		ys[count] = transformed ? transformY(x, y) : y;
+		count++;
+	}
+
+
+	// Composes the view transform with the transform of the path. Both may be null, which means identity.
+	private void setMatrix(double[] path) {
+		transformed = view != null || path != null;
+		if(!transformed) {
+			scale = 1;
+			return;
+		}
+		if(view == null) System.arraycopy(path, 0, matrix, 0, 6);
+		else if(path == null) System.arraycopy(view, 0, matrix, 0, 6);
+		else SVG.multiply(view, path, matrix);
+		scale = SVG.getScale(matrix);
+	}
+
+
+	private double transformX(double x, double y) {
+		return matrix[0] * x + matrix[2] * y + matrix[4];
+	}
+
+
+	private double transformY(double x, double y) {
+		return matrix[1] * x + matrix[3] * y + matrix[5];
+	}
+
+
+	// Passes current polyline to the sink. A single point is passed only if it's closed, because it doesn't make any line otherwise.
+	private void flush(boolean closed) {
+		if(count > 1 || (closed && count == 1)) sink.polyline(xs, ys, count, closed);
+		count = 0;
+	}
+
+
+	// Makes sure, that the buffers can hold the number of points
+	private void reserve(int points) {
+		if(points <= xs.length) return;
+		int capacity = Math.max(points, xs.length * 2);
+		xs = Arrays.copyOf(xs, capacity);
+		ys = Arrays.copyOf(ys, capacity);
+	}
+
+
+	// GETTERS
+
+
+	int getCurvePoints() {return curvePoints;}
+	double getTolerance() {return tolerance;}
+	double[] getView() {return view;}
+
+
+	// NUMBER OF POINTS
+
+
+	/**
+	 * Returns the number of points for a quadratic Bezier curve starting at (x0, y0).
+	 * The distance between uniformly divided quadratic curve and its chord is at most |P0 - 2P1 + P2| / (4n^2).
+	 */
+	int quadPoints(double x0, double y0, double x1, double y1, double x2, double y2) {
+		if(curvePoints > 0) return curvePoints;
+		double dd = length(x0 - 2 * x1 + x2, y0 - 2 * y1 + y2);
+		return segments(Math.sqrt(dd / (4 * tolerance))) + 1;
+	}
+
+
+	/**
+	 * Returns the number of points for a cubic Bezier curve starting at (x0, y0).
+	 * Wang's formula: n segments keep the error below 3/4 * max|second difference| / n^2.
+	 */
+	int cubicPoints(double x0, double y0, double x1, double y1, double x2, double y2, double x3, double y3) {
+		if(curvePoints > 0) return curvePoints;
+		double dd = Math.max(length(x0 - 2 * x1 + x2, y0 - 2 * y1 + y2), length(x1 - 2 * x2 + x3, y1 - 2 * y2 + y3));
+		return segments(Math.sqrt(0.75 * dd / tolerance)) + 1;
+	}
+
+
+	/**
+	 * Returns the number of points for an arc with the given radius and sweep angle in radians.
+	 * A chord of a circle deviates from it by r(1 - cos(a/2)), so one segment may span at most 2 acos(1 - tolerance/r).
+	 */
+	int arcPoints(double radius, double angle) {
+		if(curvePoints > 0) return curvePoints;
+		double step = tolerance >= radius ? Math.PI : 2 * Math.acos(1 - tolerance / radius);
+		return segments(angle / step) + 1;
+	}
+
+
+	private static double length(double x, double y) {
+		return Math.sqrt(x * x + y * y);
+	}
+
+
+	private static int segments(double n) {
+		if(!(n < MAX_CURVE_SEGMENTS)) return MAX_CURVE_SEGMENTS;
+		return Math.max(1, (int)Math.ceil(n));
+	}
+
+
+}
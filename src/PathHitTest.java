@@ -0,0 +1,121 @@
+import java.awt.geom.Rectangle2D;
+
+
+/**
+ * Tests flattened paths against a point or a rectangle.
+ *
+ * Polylines of one path are passed to the test as to any other sink. For a point, the test sums the winding number of all subpaths
+ * (every subpath is closed for filling, as in SVG) and checks the distance of the point from drawn lines. For a rectangle,
+ * it checks if any line crosses the rectangle or if the rectangle lies inside the filled area.
+ */
+final class PathHitTest implements SVG.PolylineSink {
+
+
+	private double x, y, distance;
+	
+	// Parameters of the part of a line inside the rectangle, used while clipping
+	private double t0, t1;
+	private Rectangle2D rectangle;
+	private int winding;
+	private boolean hit;
+
+
+	/**
+	 * Starts testing a path against the point.
+	 *
+	 * @param x The x-coordinate of the point
+	 * @param y The y-coordinate of the point
+	 * @param distance The maximum distance of the point from lines of the path
+	 */
+	void reset(double x, double y, double distance) {
+		this.x = x;
+		this.y = y;
+		this.distance = distance;
+		this.rectangle = null;
+		winding = 0;
+		hit = false;
+	}
+
+
+	/**
+	 * Starts testing a path against the rectangle.
+	 *
+	 * @param rectangle The rectangle
+	 */
+	void reset(Rectangle2D rectangle) {
+		reset(rectangle.getMinX(), rectangle.getMinY(), 0);
+		this.rectangle = rectangle;
+	}
+
+
+	/**
+	 * Returns the result of the test of the path passed since the last reset.
+	 *
+	 * @return True if the point is inside the filled area or near the lines, or if the rectangle intersects the path
+	 */
+	boolean isHit() {
+		return hit || winding != 0;
+	}
+
+
+	@Override
+	public void polyline(double[] xs, double[] ys, int count, boolean closed) {
+		if(hit) return;
+		for(int i = 0;i < count;i++) {
+			int j = i + 1 < count ? i + 1 : 0;
+			// The closing line is drawn only for closed polylines, but every subpath is closed when it's filled
+			boolean drawn = j > 0 || closed;
+			double x1 = xs[i], y1 = ys[i], x2 = xs[j], y2 = ys[j];
+			if(rectangle == null ? drawn && distance(x1, y1, x2, y2) <= distance : crosses(x1, y1, x2, y2)) {
+				hit = true;
+				return;
+			}
+			// Nonzero winding rule: upward lines left of the point add one, downward lines subtract one
+			if(y1 <= y && y2 > y && side(x1, y1, x2, y2) > 0) winding++;
+			else if(y2 <= y && y1 > y && side(x1, y1, x2, y2) < 0) winding--;
+		}
+	}
+
+
+	// Positive if the point is left of the line from (x1, y1) to (x2, y2)
+	private double side(double x1, double y1, double x2, double y2) {
+		return (x2 - x1) * (y - y1) - (x - x1) * (y2 - y1);
+	}
+
+
+	// Distance of the point from the line segment
+	private double distance(double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1, dy = y2 - y1;
+		double length = dx * dx + dy * dy;
+		double t = length == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / length));
+		double px = x1 + t * dx - x, py = y1 + t * dy - y;
+		return Math.sqrt(px * px + py * py);
+	}
+
+
+	// Checks if the line segment has a common point with the rectangle, by clipping it to the rectangle (Liang-Barsky)
+	private boolean crosses(double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1, dy = y2 - y1;
+		t0 = 0;
+		t1 = 1;
+		return clip(-dx, x1 - rectangle.getMinX()) && clip(dx, rectangle.getMaxX() - x1)
+				&& clip(-dy, y1 - rectangle.getMinY()) && clip(dy, rectangle.getMaxY() - y1);
+	}
+
+
+	private boolean clip(double p, double q) {
+		if(p == 0) return q >= 0;
+		double r = q / p;
+		if(p < 0) {
+			if(r > t1) return false;
+			if(r > t0) t0 = r;
+		}
+		else {
+			if(r < t0) return false;
+			if(r < t1) t1 = r;
+		}
+		return true;
+	}
+
+
+}
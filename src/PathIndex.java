@@ -0,0 +1,251 @@
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/**
+ * Uniform grid over bounding boxes of paths, answering which paths intersect a rectangle.
+ *
+ * The grid covers bounds of the whole document and has about as many cells as there are paths, so a cell holds a few paths.
+ * Every path is listed in all cells its box overlaps, paths overlapping too many cells are kept in a separate list checked
+ * by every query. Cells are stored in two arrays: paths of cell c are cellPaths[cellStarts[c]] ... cellPaths[cellStarts[c + 1] - 1].
+ * A query visits only cells overlapping the rectangle, so it takes time proportional to the number of paths found, not to the size of the document.
+ *
+ * Paths are kept in slots, the slot of a path doesn't change until the index is built again. The grid is built from bounds of paths
+ * at the time of building. When a path changes or is inserted, its new bounds are recorded and the path is checked by every query
+ * like large paths, instead of the grid. A removed path gets empty bounds, so it's never found. After too many changes the index
+ * should be built again. Queries are thread safe, but not together with changes.
+ */
+final class PathIndex {
+
+
+	// Paths overlapping more cells than this are checked by every query instead of being listed in cells
+	private static final int MAX_PATH_CELLS = 64;
+
+	// Upper limit of columns and rows of the grid
+	private static final int MAX_GRID_SIZE = 1024;
+
+	// Paths changed since building, which are checked by every query, at most this many or this part of all paths
+	private static final int MAX_CHANGED_PATHS = 64, CHANGED_PATHS_PART = 16;
+
+	private static final Comparator<SVG.Path> DOCUMENT_ORDER = Comparator.comparingLong(SVG.Path::getOrder);
+
+	// Path in slot x and its bounds, NaN if the path has no points or was removed. Slots after size are free.
+	private SVG.Path[] paths;
+	private double[] minX, minY, maxX, maxY;
+	private int size;
+
+	private final double originX, originY, cellWidth, cellHeight;
+	private final int columns, rows;
+	private final int[] cellStarts, cellPaths;
+	private final int[] largePaths;
+
+	// Changed paths, and which paths are changed, allocated on the first change
+	private int[] changedPaths;
+	private boolean[] changed;
+	private int changedCount;
+
+
+	/**
+	 * Builds the index over bounds of the paths.
+	 *
+	 * @param paths The paths in document order, their indexes in this array are their slots
+	 */
+	PathIndex(SVG.Path[] paths) {
+		int n = paths.length;
+		this.paths = paths.clone();
+		size = n;
+		minX = new double[n];
+		minY = new double[n];
+		maxX = new double[n];
+		maxY = new double[n];
+		double left = Double.POSITIVE_INFINITY, top = Double.POSITIVE_INFINITY, right = Double.NEGATIVE_INFINITY, bottom = Double.NEGATIVE_INFINITY;
+		int bounded = 0;
+		for(int x = 0;x < n;x++) {
+			Rectangle2D bounds = paths[x].getBounds();
+			if(bounds == null) {
+				minX[x] = minY[x] = maxX[x] = maxY[x] = Double.NaN;
+				continue;
+			}
+			minX[x] = bounds.getMinX();
+			minY[x] = bounds.getMinY();
+			maxX[x] = bounds.getMaxX();
+			maxY[x] = bounds.getMaxY();
+			left = Math.min(left, minX[x]);
+			top = Math.min(top, minY[x]);
+			right = Math.max(right, maxX[x]);
+			bottom = Math.max(bottom, maxY[x]);
+			bounded++;
+		}
+
+		// About one path per cell, cells are roughly square
+		double width = bounded == 0 ? 0 : right - left;
+		double height = bounded == 0 ? 0 : bottom - top;
+		double aspect = width > 0 && height > 0 ? width / height : 1;
+		columns = width > 0 ? clamp((int)Math.ceil(Math.sqrt(bounded * aspect))) : 1;
+		rows = height > 0 ? clamp((int)Math.ceil(Math.sqrt(bounded / aspect))) : 1;
+		originX = bounded == 0 ? 0 : left;
+		originY = bounded == 0 ? 0 : top;
+		cellWidth = width > 0 ? width / columns : 1;
+		cellHeight = height > 0 ? height / rows : 1;
+
+		// First pass counts paths of every cell, second pass fills them in document order
+		int[] counts = new int[columns * rows + 1];
+		int large = 0;
+		for(int x = 0;x < n;x++) {
+			if(Double.isNaN(minX[x])) continue;
+			int c1 = column(minX[x]), c2 = column(maxX[x]), r1 = row(minY[x]), r2 = row(maxY[x]);
+			if((long)(c2 - c1 + 1) * (r2 - r1 + 1) > MAX_PATH_CELLS) {
+				large++;
+				continue;
+			}
+			for(int r = r1;r <= r2;r++) for(int c = c1;c <= c2;c++) counts[r * columns + c + 1]++;
+		}
+		cellStarts = new int[columns * rows + 1];
+		for(int c = 0;c < columns * rows;c++) cellStarts[c + 1] = cellStarts[c] + counts[c + 1];
+		cellPaths = new int[cellStarts[columns * rows]];
+		largePaths = new int[large];
+		int[] fill = Arrays.copyOf(cellStarts, columns * rows);
+		large = 0;
+		for(int x = 0;x < n;x++) {
+			if(Double.isNaN(minX[x])) continue;
+			int c1 = column(minX[x]), c2 = column(maxX[x]), r1 = row(minY[x]), r2 = row(maxY[x]);
+			if((long)(c2 - c1 + 1) * (r2 - r1 + 1) > MAX_PATH_CELLS) {
+				largePaths[large++] = x;
+				continue;
+			}
+			for(int r = r1;r <= r2;r++) for(int c = c1;c <= c2;c++) cellPaths[fill[r * columns + c]++] = x;
+		}
+	}
+
+
+	/**
+	 * Returns paths, whose bounding boxes intersect the rectangle or touch it, in document order.
+	 *
+	 * @param rectangle The rectangle in coordinates of the document
+	 * @return The paths sorted by SVG.Path.getOrder()
+	 */
+	SVG.Path[] query(Rectangle2D rectangle) {
+		double x1 = rectangle.getMinX(), y1 = rectangle.getMinY(), x2 = rectangle.getMaxX(), y2 = rectangle.getMaxY();
+		int[] found = new int[16];
+		int count = 0;
+		int c1 = column(x1), c2 = column(x2), r1 = row(y1), r2 = row(y2);
+		for(int r = r1;r <= r2;r++) for(int c = c1;c <= c2;c++) {
+			int cell = r * columns + c;
+			for(int i = cellStarts[cell];i < cellStarts[cell + 1];i++) {
+				int x = cellPaths[i];
+				if(changed != null && changed[x]) continue;
+				if(!intersects(x, x1, y1, x2, y2)) continue;
+				// A path listed in several cells is reported only by the cell holding the top left corner of its intersection with the rectangle
+				if(column(Math.max(x1, minX[x])) != c || row(Math.max(y1, minY[x])) != r) continue;
+				if(count == found.length) found = Arrays.copyOf(found, count * 2);
+				found[count++] = x;
+			}
+		}
+		for(int x : largePaths) if(intersects(x, x1, y1, x2, y2)) {
+			if(count == found.length) found = Arrays.copyOf(found, count * 2);
+			found[count++] = x;
+		}
+		for(int i = 0;i < changedCount;i++) if(intersects(changedPaths[i], x1, y1, x2, y2)) {
+			if(count == found.length) found = Arrays.copyOf(found, count * 2);
+			found[count++] = changedPaths[i];
+		}
+		// Slots are in document order, except for slots of inserted paths
+		Arrays.sort(found, 0, count);
+		SVG.Path[] result = new SVG.Path[count];
+		for(int i = 0;i < count;i++) result[i] = paths[found[i]];
+		if(changedCount > 0) Arrays.sort(result, DOCUMENT_ORDER);
+		return result;
+	}
+
+
+	/**
+	 * Records new bounds of a changed path. The path isn't looked up in the grid anymore, it's checked by every query.
+	 *
+	 * @param slot The slot of the path
+	 * @param bounds New bounds of the path or null if it has no points
+	 */
+	void update(int slot, Rectangle2D bounds) {
+		minX[slot] = bounds == null ? Double.NaN : bounds.getMinX();
+		minY[slot] = bounds == null ? Double.NaN : bounds.getMinY();
+		maxX[slot] = bounds == null ? Double.NaN : bounds.getMaxX();
+		maxY[slot] = bounds == null ? Double.NaN : bounds.getMaxY();
+		// Large paths are checked by every query already
+		if(Arrays.binarySearch(largePaths, slot) >= 0) return;
+		if(changed == null) {
+			changed = new boolean[minX.length];
+			changedPaths = new int[4];
+		}
+		if(changed[slot]) return;
+		changed[slot] = true;
+		if(changedCount == changedPaths.length) changedPaths = Arrays.copyOf(changedPaths, changedCount * 2);
+		changedPaths[changedCount++] = slot;
+	}
+
+
+	/**
+	 * Adds a new path in a new slot. It's checked by every query like changed paths.
+	 *
+	 * @param path The path, its document order has to be set already
+	 * @return The slot of the path
+	 */
+	int insert(SVG.Path path) {
+		if(size == paths.length) {
+			int capacity = Math.max(16, size + (size >> 1));
+			paths = Arrays.copyOf(paths, capacity);
+			minX = Arrays.copyOf(minX, capacity);
+			minY = Arrays.copyOf(minY, capacity);
+			maxX = Arrays.copyOf(maxX, capacity);
+			maxY = Arrays.copyOf(maxY, capacity);
+			if(changed != null) changed = Arrays.copyOf(changed, capacity);
+		}
+		int slot = size++;
+		paths[slot] = path;
+		update(slot, path.getBounds());
+		return slot;
+	}
+
+
+	/**
+	 * Removes the path in the slot. Its slot isn't used again, it has empty bounds, so queries don't find it.
+	 *
+	 * @param slot The slot of the path
+	 */
+	void remove(int slot) {
+		paths[slot] = null;
+		minX[slot] = minY[slot] = maxX[slot] = maxY[slot] = Double.NaN;
+	}
+
+
+	/**
+	 * Returns true if so many paths have changed or have been inserted, that the index should be built again.
+	 */
+	boolean isWorn() {
+		return changedCount > Math.max(MAX_CHANGED_PATHS, size / CHANGED_PATHS_PART);
+	}
+
+
+	private boolean intersects(int path, double x1, double y1, double x2, double y2) {
+		return minX[path] <= x2 && maxX[path] >= x1 && minY[path] <= y2 && maxY[path] >= y1;
+	}
+
+
+	// Column of the cell containing x, coordinates outside of the grid belong to the border cells
+	private int column(double x) {
+		double c = Math.floor((x - originX) / cellWidth);
+		return c < 0 ? 0 : c >= columns ? columns - 1 : (int)c;
+	}
+
+
+	private int row(double y) {
+		double r = Math.floor((y - originY) / cellHeight);
+		return r < 0 ? 0 : r >= rows ? rows - 1 : (int)r;
+	}
+
+
+	private static int clamp(int size) {
+		return Math.max(1, Math.min(MAX_GRID_SIZE, size));
+	}
+
+
+}
@@ -0,0 +1,223 @@
+import java.util.Arrays;
+
+
+/**
+ * A hand-written lexer for SVG path data and lists of numbers.
+ *
+ * The lexer walks the source once, character by character, and writes numbers straight into a growable
+ * array of doubles, so no objects are created per number or per command. Buffers are kept between calls,
+ * so one lexer can be reused for every path of a document.
+ *
+ * Numbers follow the SVG rules: "1.5.5" is 1.5 and .5, "10-5" is 10 and -5, exponents like 1e-3 are
+ * supported and the flags of elliptical arc commands may be packed together like "a5 5 0 105 5".
+ */
+final class PathLexer {
+
+
+	// Powers of ten, which are represented exactly as double
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	// Result of the last parse(). Command x has letter letters[x] and its numbers are numbers[offsets[x]] ... numbers[offsets[x + 1] - 1]
+	private byte[] letters = new byte[16];
+	private int[] offsets = new int[17];
+	private double[] numbers = new double[64];
+	private int commandCount, numberCount;
+
+	// Value of the number found by the last scanNumber() call
+	private double value;
+
+
+	/**
+	 * Parses path data (the content of the d attribute) found between start and end index of the source.
+	 * Numbers standing before the first command letter are ignored.
+	 *
+	 * @param source The source containing path data
+	 * @param start The index of the first character of path data
+	 * @param end The index of the character after path data
+	 */
+	void parse(CharSequence source, int start, int end) {
+		commandCount = 0;
+		numberCount = 0;
+		char letter = 0;
+		int arguments = 0;
+		int i = start;
+		while(i < end) {
+			char c = source.charAt(i);
+			if(isCommand(c)) {
+				addCommand(c);
+				letter = c;
+				arguments = 0;
+				i++;
+			}
+			else if(isNumberStart(c) && commandCount > 0) {
+				// 4th and 5th argument of an arc are flags, which consist of exactly one character and don't need separators
+				int argument = arguments % 7;
+				if((letter == 'A' || letter == 'a') && (argument == 3 || argument == 4) && (c == '0' || c == '1')) {
+					value = c - '0';
+					i++;
+				}
+				else {
+					int next = scanNumber(source, i, end);
+					if(next == i) {
+						i++;
+						continue;
+					}
+					i = next;
+				}
+				addNumber(value);
+				arguments++;
+			}
+			else i++;
+		}
+		offsets[commandCount] = numberCount;
+	}
+
+
+	/**
+	 * Finds real numbers in the source and returns them as a double array. Everything else than numbers is skipped.
+	 *
+	 * @param source The source containing numeric values
+	 * @return A double array containing the numbers found in the source, or null if the source is null
+	 */
+	static double[] numbers(CharSequence source) {
+		if(source == null) return null;
+		PathLexer lexer = new PathLexer();
+		int end = source.length();
+		int i = 0;
+		while(i < end) {
+			int next = isNumberStart(source.charAt(i)) ? lexer.scanNumber(source, i, end) : i;
+			if(next == i) i++;
+			else {
+				lexer.addNumber(lexer.value);
+				i = next;
+			}
+		}
+		return Arrays.copyOf(lexer.numbers, lexer.numberCount);
+	}
+
+
+	/**
+	 * Scans a number starting at the given index and stores it in the value field.
+	 *
+	 * Numbers with up to 15 significant digits and a small exponent are computed exactly from their digits,
+	 * other numbers are passed to Double.parseDouble(), so the result is always correctly rounded.
+	 *
+	 * @param source The source containing the number
+	 * @param start The index of the first character of the number
+	 * @param end The index, where scanning must stop
+	 * @return The index of the character after the number, or start if there is no number at start index
+	 */
+	private int scanNumber(CharSequence source, int start, int end) {
+		int i = start;
+		char c = source.charAt(i);
+		boolean negative = c == '-';
+		if(c == '-' || c == '+') i++;
+
+		long mantissa = 0;
+		int digits = 0, exponent = 0;
+		boolean exact = true, found = false;
+
+		// Integer part
+		while(i < end && (c = source.charAt(i)) >= '0' && c <= '9') {
+			if(digits < 18) {
+				mantissa = mantissa * 10 + (c - '0');
+				if(mantissa != 0) digits++;
+			}
+			else {
+				exponent++;
+				exact = false;
+			}
+			found = true;
+			i++;
+		}
+
+		// Fraction part. A second dot starts the next number.
+		if(i < end && source.charAt(i) == '.') {
+			int j = i + 1;
+			while(j < end && (c = source.charAt(j)) >= '0' && c <= '9') {
+				if(digits < 18) {
+					mantissa = mantissa * 10 + (c - '0');
+					if(mantissa != 0) digits++;
+					exponent--;
+				}
+				else exact = false;
+				j++;
+			}
+			if(found || j > i + 1) {
+				found = true;
+				i = j;
+			}
+		}
+		if(!found) return start;
+
+		// Exponent is taken only if there are digits after 'e', so "2em" is 2 followed by letters
+		if(i < end && ((c = source.charAt(i)) == 'e' || c == 'E')) {
+			int j = i + 1;
+			boolean negativeExponent = false;
+			if(j < end && ((c = source.charAt(j)) == '-' || c == '+')) {
+				negativeExponent = c == '-';
+				j++;
+			}
+			if(j < end && (c = source.charAt(j)) >= '0' && c <= '9') {
+				int e = 0;
+				while(j < end && (c = source.charAt(j)) >= '0' && c <= '9') {
+					if(e < 100000) e = e * 10 + (c - '0');
+					j++;
+				}
+				exponent += negativeExponent ? -e : e;
+				i = j;
+			}
+		}
+
+		if(mantissa == 0) value = 0;
+		else if(exact && digits <= 15 && exponent >= -22 && exponent <= 22) value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+		else value = Math.abs(Double.parseDouble(source.subSequence(start, i).toString()));
+		if(negative) value = -value;
+		return i;
+	}
+
+
+	private void addCommand(char letter) {
+		if(commandCount == letters.length) {
+			letters = Arrays.copyOf(letters, commandCount * 2);
+			offsets = Arrays.copyOf(offsets, commandCount * 2 + 1);
+		}
+		letters[commandCount] = (byte)letter;
+		offsets[commandCount] = numberCount;
+		commandCount++;
+	}
+
+
+	private void addNumber(double number) {
+		if(numberCount == numbers.length) numbers = Arrays.copyOf(numbers, numberCount * 2);
+		numbers[numberCount++] = number;
+	}
+
+
+	// Every letter except 'e' and 'E', which belong to numbers, starts a new command
+	private static boolean isCommand(char c) {
+		return ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) && c != 'e' && c != 'E';
+	}
+
+
+	private static boolean isNumberStart(char c) {
+		return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+';
+	}
+
+
+	// GETTERS
+
+
+	int getCommandCount() {return commandCount;}
+	int getNumberCount() {return numberCount;}
+
+	// Returned arrays are the internal buffers of the lexer. They are valid until the next call of parse().
+	byte[] getLetters() {return letters;}
+	int[] getOffsets() {return offsets;}
+	double[] getNumbers() {return numbers;}
+
+
+}
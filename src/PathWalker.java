@@ -0,0 +1,199 @@
+/**
+ * Walks the packed commands of an SVG.Path and turns them into absolute segments.
+ *
+ * Relative commands, H and V lines, implicit lines after M, reflected control points of S and T,
+ * and degenerate arcs are resolved here once, so classes extending PathWalker (flattening, bounds, shapes)
+ * only have to handle moves, lines, quadratic and cubic Bezier curves, arcs and closing of subpaths.
+ * All coordinates passed to the handlers are in the coordinate system of the path, transforms are not applied.
+ */
+abstract class PathWalker {
+
+
+	// Current point. In every handler it's the start point of the segment, it's updated after the handler returns.
+	protected double x0, y0;
+
+	// Start point of current subpath, where closePath() returns the pen
+	protected double ix, iy;
+
+
+	/**
+	 * Walks all commands of the path and calls the handlers for every segment.
+	 *
+	 * @param path The path to walk
+	 */
+	void walk(SVG.Path path) {
+		byte[] letters = path.getLetters();
+		int[] offsets = path.getOffsets();
+		double[] p = path.getCoordinates();
+
+		x0 = y0 = ix = iy = 0;
+		// Last control point of previous curve, used by S and T commands
+		double cx = 0, cy = 0;
+		char previous = 0;
+
+		for(int c = 0;c < letters.length;c++) {
+			char letter = (char)letters[c];
+			boolean relative = letter >= 'a';
+			int start = offsets[c];
+			int end = offsets[c + 1];
+
+			switch(letter) {
+
+			// First pair moves the pen, next pairs are implicit lines
+			case 'M':
+			case 'm':
+				if(end - start < 2) break;
+				ix = relative ? x0 + p[start] : p[start];
+				iy = relative ? y0 + p[start + 1] : p[start + 1];
+				moveTo(ix, iy);
+				x0 = ix;
+				y0 = iy;
+				for(int t = start + 2;t + 1 < end;t += 2) line(relative ? x0 + p[t] : p[t], relative ? y0 + p[t + 1] : p[t + 1]);
+				break;
+
+			case 'L':
+			case 'l':
+				for(int t = start;t + 1 < end;t += 2) line(relative ? x0 + p[t] : p[t], relative ? y0 + p[t + 1] : p[t + 1]);
+				break;
+
+			case 'H':
+			case 'h':
+				for(int t = start;t < end;t++) line(relative ? x0 + p[t] : p[t], y0);
+				break;
+
+			case 'V':
+			case 'v':
+				for(int t = start;t < end;t++) line(x0, relative ? y0 + p[t] : p[t]);
+				break;
+
+			case 'Q':
+			case 'q':
+			case 'T':
+			case 't':
+				boolean smoothQuad = letter == 'T' || letter == 't';
+				int quadSize = smoothQuad ? 2 : 4;
+				for(int t = start;t + quadSize <= end;t += quadSize) {
+					double dx = relative ? x0 : 0;
+					double dy = relative ? y0 : 0;
+					// T reflects control point of previous quadratic curve, or uses the current point if there was none
+					if(smoothQuad) {
+						boolean reflect = t > start || previous == 'Q' || previous == 'q' || previous == 'T' || previous == 't';
+						cx = reflect ? 2 * x0 - cx : x0;
+						cy = reflect ? 2 * y0 - cy : y0;
+					}
+					else {
+						cx = dx + p[t];
+						cy = dy + p[t + 1];
+					}
+					double x = dx + p[t + quadSize - 2];
+					double y = dy + p[t + quadSize - 1];
+					quadTo(cx, cy, x, y);
+					x0 = x;
+					y0 = y;
+				}
+				break;
+
+			case 'C':
+			case 'c':
+			case 'S':
+			case 's':
+				boolean smoothCubic = letter == 'S' || letter == 's';
+				int cubicSize = smoothCubic ? 4 : 6;
+				for(int t = start;t + cubicSize <= end;t += cubicSize) {
+					double dx = relative ? x0 : 0;
+					double dy = relative ? y0 : 0;
+					// S reflects second control point of previous cubic curve, or uses the current point if there was none
+					double x1, y1;
+					if(smoothCubic) {
+						boolean reflect = t > start || previous == 'C' || previous == 'c' || previous == 'S' || previous == 's';
+						x1 = reflect ? 2 * x0 - cx : x0;
+						y1 = reflect ? 2 * y0 - cy : y0;
+					}
+					else {
+						x1 = dx + p[t];
+						y1 = dy + p[t + 1];
+					}
+					int k = t + cubicSize - 4;
+					cx = dx + p[k];
+					cy = dy + p[k + 1];
+					double x = dx + p[k + 2];
+					double y = dy + p[k + 3];
+					curveTo(x1, y1, cx, cy, x, y);
+					x0 = x;
+					y0 = y;
+				}
+				break;
+
+			// Arcs with a zero radius are lines, arcs ending in the current point are drawn as a zero length line
+			case 'A':
+			case 'a':
+				for(int t = start;t + 6 < end;t += 7) {
+					double x = relative ? x0 + p[t + 5] : p[t + 5];
+					double y = relative ? y0 + p[t + 6] : p[t + 6];
+					double rx = Math.abs(p[t]);
+					double ry = Math.abs(p[t + 1]);
+					if(rx == 0 || ry == 0 || (x == x0 && y == y0)) lineTo(x, y);
+					else arcTo(rx, ry, p[t + 2], p[t + 3] != 0, p[t + 4] != 0, x, y);
+					x0 = x;
+					y0 = y;
+				}
+				break;
+
+			case 'Z':
+			case 'z':
+				closePath();
+				x0 = ix;
+				y0 = iy;
+				break;
+			}
+
+			previous = letter;
+		}
+	}
+
+
+	// Draws a line and moves the current point to its end
+	private void line(double x, double y) {
+		lineTo(x, y);
+		x0 = x;
+		y0 = y;
+	}
+
+
+	// HANDLERS
+
+
+	/**
+	 * Starts a new subpath at the given point.
+	 */
+	abstract void moveTo(double x, double y);
+
+	/**
+	 * Line from the current point to the given point.
+	 */
+	abstract void lineTo(double x, double y);
+
+	/**
+	 * Quadratic Bezier curve from the current point with control point (x1, y1), ending at (x2, y2).
+	 */
+	abstract void quadTo(double x1, double y1, double x2, double y2);
+
+	/**
+	 * Cubic Bezier curve from the current point with control points (x1, y1) and (x2, y2), ending at (x3, y3).
+	 */
+	abstract void curveTo(double x1, double y1, double x2, double y2, double x3, double y3);
+
+	/**
+	 * Elliptical arc from the current point to (x, y). Radii are positive and the end point differs from the current point.
+	 *
+	 * @param phi The rotation angle of the ellipse in degrees
+	 */
+	abstract void arcTo(double rx, double ry, double phi, boolean large, boolean sweep, double x, double y);
+
+	/**
+	 * Closes the current subpath with a line to its start point.
+	 */
+	abstract void closePath();
+
+
+}
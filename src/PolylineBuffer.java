@@ -0,0 +1,56 @@
+import java.util.Arrays;
+
+
+/**
+ * A polyline sink, which records polylines, so they can be replayed later without flattening the path again.
+ *
+ * Every polyline is kept in its own trimmed arrays, which are passed to the sink directly on replay.
+ */
+final class PolylineBuffer implements SVG.PolylineSink {
+
+
+	// Approximate size of an array header and a reference, used to estimate memory taken by the buffer
+	private static final int ARRAY_OVERHEAD = 16, REFERENCE = 8;
+
+	private double[][] xs = new double[4][], ys = new double[4][];
+	private boolean[] closed = new boolean[4];
+	private int count;
+	private long bytes;
+
+
+	@Override
+	public void polyline(double[] xs, double[] ys, int count, boolean closed) {
+		if(this.count == this.xs.length) {
+			this.xs = Arrays.copyOf(this.xs, this.count * 2);
+			this.ys = Arrays.copyOf(this.ys, this.count * 2);
+			this.closed = Arrays.copyOf(this.closed, this.count * 2);
+		}
+		this.xs[this.count] = Arrays.copyOf(xs, count);
+		this.ys[this.count] = Arrays.copyOf(ys, count);
+		this.closed[this.count] = closed;
+		this.count++;
+		bytes += 2 * (ARRAY_OVERHEAD + REFERENCE + 8L * count) + 1;
+	}
+
+
+	/**
+	 * Passes all recorded polylines to the sink in the order they were recorded.
+	 *
+	 * @param sink The sink receiving polylines
+	 */
+	void replay(SVG.PolylineSink sink) {
+		for(int x = 0;x < count;x++) sink.polyline(xs[x], ys[x], xs[x].length, closed[x]);
+	}
+
+
+	/**
+	 * Returns estimated number of bytes taken by recorded polylines.
+	 *
+	 * @return The estimated size of the buffer in bytes
+	 */
+	long getBytes() {
+		return bytes + 3 * ARRAY_OVERHEAD + (2L * REFERENCE + 1) * xs.length;
+	}
+
+
+}
@@ -0,0 +1,487 @@
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+
+/**
+ * Software rasterizer drawing flattened paths into an ARGB pixel buffer.
+ *
+ * Polylines of one path are collected, then the path is filled and stroked. Filling uses an edge table: edges are put into buckets
+ * by the row they start in, and a list of active edges is kept while rows are swept from top to bottom. Every row is sampled
+ * by several sub-scanlines, spans between crossings of active edges are accumulated with exact horizontal coverage, so edges are
+ * anti-aliased in both directions. Strokes are filled the same way as a union of one quad per line and joins, or drawn as
+ * one pixel wide anti-aliased hairlines (Xiaolin Wu's algorithm).
+ *
+ * Pixels are non-premultiplied ARGB, like in BufferedImage.TYPE_INT_ARGB, colors are composited with source-over.
+ */
+final class Rasterizer implements SVG.PolylineSink {
+
+
+	// Number of sides of polygons approximating round joins
+	private static final int JOIN_SIDES = 8;
+
+	private final int[] argb;
+	private final int width, height;
+	private final SVG.RenderOptions options;
+	private final int samples;
+
+	// Vertices of polylines of the current path, polyline x is vertices starts[x] ... starts[x + 1] - 1
+	private double[] px = new double[256], py = new double[256];
+	private int pointCount;
+	private int[] starts = new int[16];
+	private boolean[] closed = new boolean[16];
+	private int polylineCount;
+
+	// Style of the current path
+	private int fillColor, strokeColor;
+	private double strokeWidth;
+	private boolean hairlines, evenOdd;
+
+	// Edges, y0 < y1, direction is 1 for downward edges and -1 for upward ones
+	private double[] ex0 = new double[256], ey0 = new double[256], ex1 = new double[256], ey1 = new double[256];
+	private int[] direction = new int[256];
+	private int edgeCount;
+
+	// Edge table: first edge starting in every row and the next edge of the same row
+	private final int[] rowHeads;
+	private int[] nextEdge = new int[256];
+	private int[] active = new int[64];
+
+	// Crossings of a sub-scanline with active edges
+	private double[] crossings = new double[64];
+	private int[] crossingDirections = new int[64];
+
+	// Coverage accumulated in the current row: partial pixels and differences of fully covered runs
+	private final float[] cover, delta;
+
+	// Parameters of the part of a hairline inside the image, used while clipping
+	private double clipStart, clipEnd;
+
+
+	Rasterizer(int[] argb, int width, int height, SVG.RenderOptions options) {
+		if(width < 0 || height < 0 || argb.length < (long)width * height) throw new IllegalArgumentException("Buffer of " + argb.length + " pixels is too small for " + width + "x" + height);
+		this.argb = argb;
+		this.width = width;
+		this.height = height;
+		this.options = options;
+		this.samples = options.getSamples();
+		rowHeads = new int[height];
+		cover = new float[width + 2];
+		delta = new float[width + 2];
+	}
+
+
+	/**
+	 * Starts a new path. Colors, stroke width and fill rule come from the options, the style of the path overrides them, if styles are used.
+	 *
+	 * @param style The style attribute of the path, may be null
+	 * @param scale The factor the transform of the path stretches lengths by, stroke widths of the style are multiplied by it
+	 */
+	void begin(String style, double scale) {
+		pointCount = 0;
+		polylineCount = 0;
+		fillColor = options.getFillColor();
+		strokeColor = options.getStrokeColor();
+		strokeWidth = options.getStrokeWidth();
+		hairlines = strokeWidth <= 0;
+		evenOdd = options.isEvenOdd();
+		if(style == null || !options.isUseStyles()) return;
+		for(String declaration : style.split(";")) {
+			int colon = declaration.indexOf(':');
+			if(colon < 0) continue;
+			String property = declaration.substring(0, colon).trim();
+			String value = declaration.substring(colon + 1).trim();
+			switch(property) {
+			case "fill": fillColor = parseColor(value, fillColor); break;
+			case "stroke": strokeColor = parseColor(value, strokeColor); break;
+			case "stroke-width":
+				// Width 0 of the style means no stroke, as in SVG, only width 0 of the options draws hairlines
+				double width = parseWidth(value);
+				if(width >= 0) {
+					strokeWidth = width * scale;
+					hairlines = false;
+				}
+				break;
+			case "fill-rule": evenOdd = value.equals("evenodd"); break;
+			}
+		}
+	}
+
+
+	// Returns the value of the last declaration of the property in the style, or null
+	private static String getProperty(String style, String name) {
+		String found = null;
+		for(String declaration : style.split(";")) {
+			int colon = declaration.indexOf(':');
+			if(colon >= 0 && declaration.substring(0, colon).trim().equals(name)) found = declaration.substring(colon + 1).trim();
+		}
+		return found;
+	}
+
+
+	/**
+	 * Checks if a path can be seen in the image, before the path is begun. Its stroke is assumed to be drawn, with the width of the style
+	 * or of the options, so the check is conservative. The style is looked at only if the path is outside of the image with the width of the options.
+	 *
+	 * @param bounds Bounds of the path in pixels, without the stroke
+	 * @param style The style attribute of the path, may be null
+	 * @param view The view matrix or null
+	 * @param matrix The matrix of the path or null
+	 * @return False if the path and its stroke lie entirely outside of the image
+	 */
+	boolean isVisible(Rectangle2D bounds, String style, double[] view, double[] matrix) {
+		double strokeWidth = Math.max(0, options.getStrokeWidth());
+		if(intersects(bounds, strokeWidth / 2)) return true;
+		if(style == null || !options.isUseStyles()) return false;
+		String value = getProperty(style, "stroke-width");
+		if(value == null) return false;
+		double width = parseWidth(value);
+		// The product of scales of both matrices is at least the scale of their product
+		double scale = (view == null ? 1 : SVG.getScale(view)) * (matrix == null ? 1 : SVG.getScale(matrix));
+		return width > 0 && intersects(bounds, width * scale / 2);
+	}
+
+
+	// Checks if the bounds enlarged by the margin and one more pixel for anti-aliased edges and hairlines intersect the image
+	private boolean intersects(Rectangle2D bounds, double margin) {
+		margin += 1;
+		return bounds.getMaxX() >= -margin && bounds.getMinX() <= width + margin && bounds.getMaxY() >= -margin && bounds.getMinY() <= height + margin;
+	}
+
+
+	@Override
+	public void polyline(double[] xs, double[] ys, int count, boolean closed) {
+		if(pointCount + count > px.length) {
+			px = Arrays.copyOf(px, Math.max(pointCount + count, px.length * 2));
+			py = Arrays.copyOf(py, px.length);
+		}
+		System.arraycopy(xs, 0, px, pointCount, count);
+		System.arraycopy(ys, 0, py, pointCount, count);
+		if(polylineCount + 2 > starts.length) {
+			starts = Arrays.copyOf(starts, starts.length * 2);
+			this.closed = Arrays.copyOf(this.closed, starts.length);
+		}
+		starts[polylineCount] = pointCount;
+		this.closed[polylineCount] = closed;
+		polylineCount++;
+		pointCount += count;
+		starts[polylineCount] = pointCount;
+	}
+
+
+	/**
+	 * Fills and strokes the path collected since begin().
+	 */
+	void end() {
+		if(polylineCount == 0) return;
+
+		// Every polyline is closed for filling
+		if((fillColor >>> 24) != 0) {
+			edgeCount = 0;
+			for(int p = 0;p < polylineCount;p++) {
+				int first = starts[p], last = starts[p + 1] - 1;
+				for(int i = first;i < last;i++) addEdge(px[i], py[i], px[i + 1], py[i + 1]);
+				addEdge(px[last], py[last], px[first], py[first]);
+			}
+			fill(fillColor, evenOdd);
+		}
+
+		if((strokeColor >>> 24) == 0) return;
+		if(hairlines) {
+			for(int p = 0;p < polylineCount;p++) {
+				int first = starts[p], last = starts[p + 1] - 1;
+				for(int i = first;i < last;i++) hairline(px[i], py[i], px[i + 1], py[i + 1]);
+				if(closed[p]) hairline(px[last], py[last], px[first], py[first]);
+			}
+			return;
+		}
+		if(strokeWidth <= 0) return;
+
+		// Stroke is a union of quads along lines and polygons around joins, all oriented the same way and filled with the nonzero rule
+		edgeCount = 0;
+		double half = strokeWidth / 2;
+		for(int p = 0;p < polylineCount;p++) {
+			int first = starts[p], last = starts[p + 1] - 1;
+			for(int i = first;i < last;i++) addQuad(px[i], py[i], px[i + 1], py[i + 1], half);
+			if(closed[p]) addQuad(px[last], py[last], px[first], py[first], half);
+			for(int i = first;i <= last;i++) if(closed[p] || (i > first && i < last)) addJoin(px[i], py[i], half);
+		}
+		fill(strokeColor, false);
+	}
+
+
+	// EDGES
+
+
+	private void addEdge(double x0, double y0, double x1, double y1) {
+		if(y0 == y1 || Double.isNaN(x0 + y0 + x1 + y1)) return;
+		int dir = 1;
+		if(y0 > y1) {
+			double t = x0;
+			x0 = x1;
+			x1 = t;
+			t = y0;
+			y0 = y1;
+			y1 = t;
+			dir = -1;
+		}
+		if(y1 <= 0 || y0 >= height) return;
+		if(edgeCount == ex0.length) {
+			int capacity = edgeCount * 2;
+			ex0 = Arrays.copyOf(ex0, capacity);
+			ey0 = Arrays.copyOf(ey0, capacity);
+			ex1 = Arrays.copyOf(ex1, capacity);
+			ey1 = Arrays.copyOf(ey1, capacity);
+			direction = Arrays.copyOf(direction, capacity);
+			nextEdge = Arrays.copyOf(nextEdge, capacity);
+		}
+		ex0[edgeCount] = x0;
+		ey0[edgeCount] = y0;
+		ex1[edgeCount] = x1;
+		ey1[edgeCount] = y1;
+		direction[edgeCount] = dir;
+		edgeCount++;
+	}
+
+
+	// Quad of the line widened by half on both sides. Its orientation depends only on the direction of the line, so all quads are oriented alike.
+	private void addQuad(double x0, double y0, double x1, double y1, double half) {
+		double dx = x1 - x0, dy = y1 - y0;
+		double length = Math.sqrt(dx * dx + dy * dy);
+		if(length == 0) return;
+		double nx = -dy / length * half, ny = dx / length * half;
+		addEdge(x0 + nx, y0 + ny, x1 + nx, y1 + ny);
+		addEdge(x1 + nx, y1 + ny, x1 - nx, y1 - ny);
+		addEdge(x1 - nx, y1 - ny, x0 - nx, y0 - ny);
+		addEdge(x0 - nx, y0 - ny, x0 + nx, y0 + ny);
+	}
+
+
+	// Polygon approximating a circle around the join, oriented like the quads
+	private void addJoin(double x, double y, double half) {
+		double previousX = x + half, previousY = y;
+		for(int i = 1;i <= JOIN_SIDES;i++) {
+			double angle = -2 * Math.PI * i / JOIN_SIDES;
+			double nextX = x + half * Math.cos(angle), nextY = y + half * Math.sin(angle);
+			addEdge(previousX, previousY, nextX, nextY);
+			previousX = nextX;
+			previousY = nextY;
+		}
+	}
+
+
+	// FILLING
+
+
+	// Fills the area enclosed by the edges with the color
+	private void fill(int color, boolean evenOdd) {
+		if(edgeCount == 0) return;
+		int firstRow = height, lastRow = -1;
+		for(int e = 0;e < edgeCount;e++) {
+			firstRow = Math.min(firstRow, Math.max(0, (int)Math.floor(ey0[e])));
+			lastRow = Math.max(lastRow, Math.min(height - 1, (int)Math.ceil(ey1[e]) - 1));
+		}
+		Arrays.fill(rowHeads, firstRow, lastRow + 1, -1);
+		for(int e = 0;e < edgeCount;e++) {
+			int row = Math.max(0, (int)Math.floor(ey0[e]));
+			nextEdge[e] = rowHeads[row];
+			rowHeads[row] = e;
+		}
+
+		int activeCount = 0;
+		for(int row = firstRow;row <= lastRow;row++) {
+			// New edges become active, finished ones are removed
+			for(int e = rowHeads[row];e >= 0;e = nextEdge[e]) {
+				if(activeCount == active.length) active = Arrays.copyOf(active, activeCount * 2);
+				active[activeCount++] = e;
+			}
+			int minX = width, maxX = -1;
+			for(int k = 0;k < samples;k++) {
+				double y = row + (k + 0.5) / samples;
+				int count = 0;
+				for(int a = 0;a < activeCount;a++) {
+					int e = active[a];
+					if(y < ey0[e] || y >= ey1[e]) continue;
+					double x = ex0[e] + (y - ey0[e]) * (ex1[e] - ex0[e]) / (ey1[e] - ey0[e]);
+					if(count == crossings.length) {
+						crossings = Arrays.copyOf(crossings, count * 2);
+						crossingDirections = Arrays.copyOf(crossingDirections, count * 2);
+					}
+					// Insertion sort, active edges are few and mostly in order
+					int i = count++;
+					while(i > 0 && crossings[i - 1] > x) {
+						crossings[i] = crossings[i - 1];
+						crossingDirections[i] = crossingDirections[i - 1];
+						i--;
+					}
+					crossings[i] = x;
+					crossingDirections[i] = direction[e];
+				}
+				int winding = 0;
+				for(int i = 0;i < count - 1;i++) {
+					winding += crossingDirections[i];
+					boolean inside = evenOdd ? (winding & 1) != 0 : winding != 0;
+					if(!inside) continue;
+					double xa = Math.max(0, crossings[i]), xb = Math.min(width, crossings[i + 1]);
+					if(xa >= xb) continue;
+					addSpan(xa, xb);
+					minX = Math.min(minX, (int)xa);
+					maxX = Math.max(maxX, (int)Math.ceil(xb));
+				}
+			}
+			if(maxX >= 0) composite(row, minX, Math.min(width - 1, maxX), color);
+			int kept = 0;
+			for(int a = 0;a < activeCount;a++) if(ey1[active[a]] > row + 1) active[kept++] = active[a];
+			activeCount = kept;
+		}
+	}
+
+
+	// Adds coverage of the span from xa to xb on one sub-scanline
+	private void addSpan(double xa, double xb) {
+		int ia = (int)xa, ib = (int)xb;
+		if(ia == ib) {
+			cover[ia] += (float)(xb - xa);
+			return;
+		}
+		cover[ia] += (float)(ia + 1 - xa);
+		delta[ia + 1] += 1;
+		delta[ib] -= 1;
+		cover[ib] += (float)(xb - ib);
+	}
+
+
+	// Blends the color into the row with accumulated coverage and clears accumulators
+	private void composite(int row, int minX, int maxX, int color) {
+		float run = 0;
+		float scale = 1f / samples;
+		int offset = row * width;
+		for(int x = minX;x <= maxX;x++) {
+			run += delta[x];
+			float coverage = (cover[x] + run) * scale;
+			cover[x] = 0;
+			delta[x] = 0;
+			if(coverage > 0) blend(offset + x, color, Math.min(1, coverage));
+		}
+		cover[maxX + 1] = 0;
+		delta[maxX + 1] = 0;
+	}
+
+
+	// HAIRLINES
+
+
+	// Anti-aliased line one pixel wide, Xiaolin Wu's algorithm. The line is clipped to the image first, so its length in pixels is bounded by the image.
+	private void hairline(double x0, double y0, double x1, double y1) {
+		double dx = x1 - x0, dy = y1 - y0;
+		clipStart = 0;
+		clipEnd = 1;
+		if(!clip(-dx, x0 + 1) || !clip(dx, width + 1 - x0) || !clip(-dy, y0 + 1) || !clip(dy, height + 1 - y0)) return;
+		x1 = x0 + clipEnd * dx;
+		y1 = y0 + clipEnd * dy;
+		x0 += clipStart * dx;
+		y0 += clipStart * dy;
+		boolean steep = Math.abs(y1 - y0) > Math.abs(x1 - x0);
+		if(steep) {
+			double t = x0;
+			x0 = y0;
+			y0 = t;
+			t = x1;
+			x1 = y1;
+			y1 = t;
+		}
+		if(x0 > x1) {
+			double t = x0;
+			x0 = x1;
+			x1 = t;
+			t = y0;
+			y0 = y1;
+			y1 = t;
+		}
+		double gradient = x1 == x0 ? 0 : (y1 - y0) / (x1 - x0);
+		int start = (int)Math.round(x0), end = (int)Math.round(x1);
+		for(int x = start;x <= end;x++) {
+			double y = y0 + gradient * (x - x0);
+			int iy = (int)Math.floor(y);
+			float fraction = (float)(y - iy);
+			plot(steep, x, iy, 1 - fraction);
+			plot(steep, x, iy + 1, fraction);
+		}
+	}
+
+
+	// Clips the parameters of the line to one side of the rectangle one pixel larger than the image (Liang-Barsky), false if nothing is left
+	private boolean clip(double p, double q) {
+		if(Double.isNaN(p) || Double.isNaN(q)) return false;
+		if(p == 0) return q >= 0;
+		double r = q / p;
+		if(p < 0) {
+			if(r > clipEnd) return false;
+			if(r > clipStart) clipStart = r;
+		}
+		else {
+			if(r < clipStart) return false;
+			if(r < clipEnd) clipEnd = r;
+		}
+		return true;
+	}
+
+
+	private void plot(boolean steep, int x, int y, float coverage) {
+		if(steep) {
+			int t = x;
+			x = y;
+			y = t;
+		}
+		if(x < 0 || y < 0 || x >= width || y >= height || coverage <= 0) return;
+		blend(y * width + x, strokeColor, coverage);
+	}
+
+
+	// COMPOSITING
+
+
+	// Source-over of the color with the coverage onto a non-premultiplied pixel
+	private void blend(int index, int color, float coverage) {
+		float sa = (color >>> 24) / 255f * coverage;
+		int pixel = argb[index];
+		float da = (pixel >>> 24) / 255f;
+		float a = sa + da * (1 - sa);
+		if(a <= 0) return;
+		float d = da * (1 - sa);
+		int r = (int)((((color >> 16) & 0xFF) * sa + ((pixel >> 16) & 0xFF) * d) / a + 0.5f);
+		int g = (int)((((color >> 8) & 0xFF) * sa + ((pixel >> 8) & 0xFF) * d) / a + 0.5f);
+		int b = (int)(((color & 0xFF) * sa + (pixel & 0xFF) * d) / a + 0.5f);
+		argb[index] = (int)(a * 255 + 0.5f) << 24 | r << 16 | g << 8 | b;
+	}
+
+
+	// Parses a length of the style, -1 if there is no number
+	private static double parseWidth(String value) {
+		double[] numbers = PathLexer.numbers(value);
+		return numbers.length > 0 ? numbers[0] : -1;
+	}
+
+
+	/**
+	 * Parses a color of the style: #rgb, #rrggbb, none, black or white.
+	 *
+	 * @return The color in ARGB, or the default color if the value isn't understood
+	 */
+	static int parseColor(String value, int defaultColor) {
+		if(value.equals("none") || value.equals("transparent")) return 0;
+		if(value.equals("black")) return 0xFF000000;
+		if(value.equals("white")) return 0xFFFFFFFF;
+		try {
+			if(value.length() == 7 && value.charAt(0) == '#') return 0xFF000000 | Integer.parseInt(value.substring(1), 16);
+			if(value.length() == 4 && value.charAt(0) == '#') {
+				int rgb = Integer.parseInt(value.substring(1), 16);
+				int r = (rgb >> 8) & 0xF, g = (rgb >> 4) & 0xF, b = rgb & 0xF;
+				return 0xFF000000 | r * 0x110000 | g * 0x1100 | b * 0x11;
+			}
+		}
+		catch(NumberFormatException e) {}
+		return defaultColor;
+	}
+
+
+}
@@ -20,9 +20,32 @@
  */
 
 
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -38,136 +61,359 @@ public class SVG {
 	private ViewBox viewBox;
 	private String version;
 	private String id;
-	private ArrayList<Tag> tagList = new ArrayList<Tag>();
-	private Path[] paths = null;
+	// Paths in document order, null after a path has been inserted or removed, until it's built again from the list of paths
+	private volatile Path[] paths = null;
+	
+	// List linking paths in document order, and its length, -1 before paths are set
+	private Path firstPath, lastPath;
+	private int pathCount = -1;
+	private Group[] groups = new Group[0];
+	private FlatteningCache flatteningCache;
+	private SVGMetrics metrics;
+	
+	// Union of bounds of all paths, computed on first request
+	private volatile Rectangle2D bounds;
+	
+	// Grid over bounds of paths, built on first viewport draw or query
+	private volatile PathIndex index;
+	
+	// Shapes of all paths in one shape, built on first request
+	private volatile Shape shape;
+	
+	// Distance between document order keys of neighbouring paths, after parsing and after keys run out between two paths
+	private static final long ORDER_SPACING = 1L << 32;
+	
+	// Files of at least this size are memory-mapped instead of being read into a heap buffer
+	private static final long MAP_THRESHOLD = 1 << 20;
+	
+	// Maximum number of paths flattened by one task of drawParallel()
+	private static final int PARALLEL_CHUNK_SIZE = 256;
+	
+	// Maximum number of paths parsed by one task, when paths are parsed in parallel
+	private static final int PARSE_CHUNK_SIZE = 64;
+	
+	// Error of flattening in hit tests, relative to the size of the document
+	private static final double HIT_TOLERANCE = 1e-4;
+	
+	// Cached bounds of a path without points
+	private static final Rectangle2D NO_BOUNDS = new Rectangle2D.Double();
+	
+	// One function of the transform attribute, e.g. rotate(45 10 10)
+	private static final Pattern TRANSFORM_FUNCTION = Pattern.compile("(matrix|translate|scale|rotate|skewX|skewY)\\s*\\(([^)]*)\\)");
 	
 
-	// Huge SVG constructor parses the SVG file and outputs tag list and paths array, which contains very important Command List (list of figures to draw)
 	/**
 	 * Constructs an SVG object by parsing an SVG file.
 	 * 
 	 * @param svgFile The SVG file to be parsed.
+	 * @throws UncheckedIOException If the file can't be read
 	 */
 	public SVG(File svgFile) {
+		try {parse(source(read(svgFile.toPath()), new ParseOptions()), new ParseOptions());}
+		catch(IOException e) {throw new UncheckedIOException(e);}
+	}
+	
+	
+	/**
+	 * Constructs an SVG object by parsing an SVG file. Large files are memory-mapped, so loading is bounded by disk throughput.
+	 * 
+	 * @param svgFile The SVG file to be parsed.
+	 * @throws IOException If the file can't be read
+	 */
+	public SVG(java.nio.file.Path svgFile) throws IOException {
+		this(svgFile, new ParseOptions());
+	}
+	
+	
+	/**
+	 * Constructs an SVG object by parsing an SVG file with the given options.
+	 * 
+	 * @param svgFile The SVG file to be parsed.
+	 * @param options The parse options
+	 * @throws IOException If the file can't be read
+	 */
+	public SVG(java.nio.file.Path svgFile, ParseOptions options) throws IOException {
+		long start = options.getMetrics() == null ? 0 : System.nanoTime();
+		CharSequence source = source(read(svgFile), options);
+		if(options.getMetrics() != null) options.getMetrics().addRead(System.nanoTime() - start);
+		parse(source, options);
+	}
+	
+	
+	/**
+	 * Constructs an SVG object by parsing an UTF-8 encoded SVG document read from the stream. The stream is read to its end, but not closed.
+	 * 
+	 * @param svgStream The stream containing the SVG document
+	 * @throws IOException If the stream can't be read
+	 */
+	public SVG(InputStream svgStream) throws IOException {
+		this(svgStream, new ParseOptions());
+	}
+	
+	
+	/**
+	 * Constructs an SVG object by parsing an UTF-8 encoded SVG document read from the stream with the given options.
+	 * 
+	 * @param svgStream The stream containing the SVG document
+	 * @param options The parse options
+	 * @throws IOException If the stream can't be read
+	 */
+	public SVG(InputStream svgStream, ParseOptions options) throws IOException {
+		long start = options.getMetrics() == null ? 0 : System.nanoTime();
+		CharSequence source = source(ByteBuffer.wrap(svgStream.readAllBytes()), options);
+		if(options.getMetrics() != null) options.getMetrics().addRead(System.nanoTime() - start);
+		parse(source, options);
+	}
+	
+	
+	/**
+	 * Constructs an SVG object by parsing an UTF-8 encoded SVG document held in the buffer.
+	 * Bytes between position and limit of the buffer are parsed, the position of the buffer isn't changed.
+	 * 
+	 * @param svgBuffer The buffer containing the SVG document
+	 */
+	public SVG(ByteBuffer svgBuffer) {
+		this(svgBuffer, new ParseOptions());
+	}
+	
+	
+	/**
+	 * Constructs an SVG object by parsing an UTF-8 encoded SVG document held in the buffer with the given options.
+	 * 
+	 * @param svgBuffer The buffer containing the SVG document
+	 * @param options The parse options
+	 */
+	public SVG(ByteBuffer svgBuffer, ParseOptions options) {
+		long start = options.getMetrics() == null ? 0 : System.nanoTime();
+		CharSequence source = source(svgBuffer, options);
+		if(options.getMetrics() != null) options.getMetrics().addRead(System.nanoTime() - start);
+		parse(source, options);
+	}
+	
+	
+	// Header of a streamed document, it has no paths. Compiled documents get their paths later.
+	private SVG() {
+		setPaths(new Path[0]);
+	}
+	
+	
+	/**
+	 * Reads an UTF-8 encoded SVG document from the stream and passes its paths to the listener one by one, without building the whole SVG object.
+	 * 
+	 * Only the tag being read and the chain of groups enclosing it are kept in memory, so documents of any size are processed in a fixed heap.
+	 * Every path is passed as soon as its element is closed, with its attributes, commands and transform composed from all enclosing groups.
+	 * The listener may keep the path, otherwise it's discarded. Streamed paths don't have a group, Path.getGroup() returns null.
+	 * The stream is read to its end, but not closed.
+	 * 
+	 * @param svgStream The stream containing the SVG document
+	 * @param listener The listener receiving paths in document order
+	 * @return The SVG object with width, height, viewBox, version and id of the document and no paths
+	 * @throws IOException If the stream can't be read
+	 */
+	public static SVG stream(InputStream svgStream, PathListener listener) throws IOException {
+		SVG svg = new SVG();
+		TagStream tags = new TagStream(new InputStreamReader(svgStream, StandardCharsets.UTF_8));
+		PathLexer lexer = new PathLexer();
+		boolean root = false;
 		
-		// Converting svg file to the form of String variable
-		String svgString = new String();
-		Scanner scanner = null;
-		try {scanner = new Scanner(svgFile);} catch(Exception e) {return;}
-		while(scanner.hasNextLine()) svgString = svgString.concat(scanner.nextLine());
-		
-		svgString = unifyEndTags(svgString);
-		findTags(svgString);
-		
-		// Write to svgString variable everything, what is in <svg> tag. I'm doing this because if I didn't, detecting version in whole document gives me xml version instead svg version
-		for(Tag tag : tagList) if(tag.getName().equals("svg")) svgString = tag.getContent();
-		
-		// Parse width and height. If there is no width or height statement in file, exception is handled.
-		try {width = findNumbers(findExpression(svgString, "width *= *\"(.*?)\""))[0];} catch(Exception e) {width = 0;}
-		try {height = findNumbers(findExpression(svgString, "height *= *\"(.*?)\""))[0];} catch(Exception e) {height = 0;}
+		// Open elements: their names, matrices composed from enclosing groups, and paths waiting for their end tags
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<double[]> matrices = new ArrayList<double[]>();
+		ArrayList<Path> pending = new ArrayList<Path>();
 		
-		// Parse viewBox
-		double[] viewBoxSize = findNumbers(findExpression(svgString, "viewBox *= *\"(.*?)\""));
-		viewBox = viewBoxSize == null ? null : new ViewBox(viewBoxSize[0], viewBoxSize[1], viewBoxSize[2], viewBoxSize[3]);
+		for(String text = tags.next();text != null;text = tags.next()) {
+			// End tag closes the nearest open element with the same name, and every element left open inside it
+			if(text.startsWith("/")) {
+				String name = text.substring(1, nameEnd(text, 1));
+				for(int x = names.size() - 1;x >= 0;x--) if(names.get(x).equals(name)) {
+					while(names.size() > x) {
+						names.remove(names.size() - 1);
+						matrices.remove(matrices.size() - 1);
+						Path path = pending.remove(pending.size() - 1);
+						if(path != null) listener.path(path);
+					}
+					break;
+				}
+				continue;
+			}
+			
+			Tag tag = svg.new Tag(tagName(text, 0, nameEnd(text, 0)), text, 0, 0);
+			boolean empty = text.endsWith("/");
+			double[] matrix = matrices.isEmpty() ? null : matrices.get(matrices.size() - 1);
+			Path path = null;
+			if(tag.getName().equals("svg") && !root) {
+				svg.parseRoot(tag);
+				root = true;
+			}
+			else if(tag.getName().equals("g")) matrix = multiply(matrix, parseTransform(tag.getAttribute("transform")));
+			else if(tag.getName().equals("path")) {
+				path = svg.new Path();
+				path.type = tag.getAttribute("type");
+				path.style = tag.getAttribute("style");
+				path.id = tag.getAttribute("id");
+				path.setMatrix(multiply(matrix, parseTransform(tag.getAttribute("transform"))));
+				int start = tag.getAttributeStart("d");
+				if(start >= 0) {
+					lexer.parse(text, start, tag.getAttributeEnd(start));
+					path.setData(lexer);
+				}
+			}
+			
+			if(empty) {
+				if(path != null) listener.path(path);
+			}
+			else {
+				names.add(tag.getName());
+				matrices.add(matrix);
+				pending.add(path);
+			}
+		}
 		
-		// Parse version
-		version = findExpression(svgString, "version *= *\"(.*?)\"");
+		// Paths, which were never closed, end with the document
+		for(int x = pending.size() - 1;x >= 0;x--) if(pending.get(x) != null) listener.path(pending.get(x));
+		return svg;
+	}
+	
+	
+	/**
+	 * Opens an SVG written by writeCompiled(). The file is memory-mapped and nothing is parsed: only the header, transforms and strings are read,
+	 * commands of every path are copied from the mapping when the path is used for the first time.
+	 * Paths of compiled documents don't have a group, Path.getGroup() returns null, their transforms are kept.
+	 * 
+	 * @param compiledFile The compiled file
+	 * @return The SVG object
+	 * @throws IOException If the file can't be read, or isn't a compiled SVG of a supported version
+	 */
+	public static SVG openCompiled(java.nio.file.Path compiledFile) throws IOException {
+		SVG svg = new SVG();
+		CompiledFormat.open(svg, compiledFile);
+		return svg;
+	}
+	
+	
+	/**
+	 * Writes this SVG in the compiled binary form, which is opened by openCompiled() without parsing.
+	 * The form is versioned, it keeps commands, transforms, ids, types and styles of paths and attributes of the document.
+	 * 
+	 * @param out The stream, which is not closed
+	 * @throws IOException If the stream fails
+	 */
+	public void writeCompiled(OutputStream out) throws IOException {
+		CompiledFormat.write(this, out);
+	}
+	
+	
+	// Used by CompiledFormat to fill an opened document
+	void setHeader(double width, double height, ViewBox viewBox, String version, String id) {
+		this.width = width;
+		this.height = height;
+		this.viewBox = viewBox;
+		this.version = version;
+		this.id = id;
+	}
+	
+	
+	void setPaths(Path[] paths) {
+		firstPath = lastPath = null;
+		for(Path path : paths) {
+			path.previous = lastPath;
+			path.next = null;
+			if(lastPath == null) firstPath = path;
+			else lastPath.next = path;
+			lastPath = path;
+		}
+		pathCount = paths.length;
+		renumber();
+		this.paths = paths;
+	}
+	
+	
+	// Gives paths document order keys spaced evenly, so new paths can be inserted between them
+	private void renumber() {
+		long order = 0;
+		for(Path path = firstPath;path != null;path = path.next, order += ORDER_SPACING) path.order = order;
+	}
+	
+	
+	// Huge parse method parses the SVG document and outputs tag list and paths array, which contains very important Command List (list of figures to draw)
+	/**
+	 * Parses the SVG document and fills the fields of this object with its data.
+	 * 
+	 * @param source The whole SVG document
+	 * @param options The parse options
+	 */
+	private void parse(CharSequence source, ParseOptions options) {
+		int documentLength = source.length();
+		SVGMetrics.ParseEvent event = new SVGMetrics.ParseEvent();
+		event.begin();
+		metrics = options.getMetrics();
+		long time = metrics == null ? 0 : System.nanoTime();
 		
-		// Parse id
-		id = findExpression(svgString, "id *= *\"(.*?)\"");
-
-		// PATHS PARSING
-				
-		// Creating path tags list
-		ArrayList<Tag> pathList = new ArrayList<Tag>();
-		for(Tag tag : tagList) if(tag.getName().equals("path")) pathList.add(tag);
+		// Tags are local to parsing, so those not held by groups are released when it ends. Lazy paths keep only the source and ranges of their commands.
+		ArrayList<Tag> tagList = findTags(source);
 		
-		// Creating array of Path objects, whose fields will be filled with data extracted from tags
-		Path[] paths = new Path[pathList.size()];
+		// Root attributes are read from the <svg> tag. I'm doing this because if I didn't, detecting version in whole document gives me xml version instead svg version
+		Tag svgTag = null;
+		for(Tag tag : tagList) if(tag.getName().equals("svg")) svgTag = tag;
+		if(svgTag != null) parseRoot(svgTag);
+		if(metrics != null) time = lap(metrics::addTags, time);
 
-		// Parsing type, style and id
-		for(int x = 0;x < paths.length;x++) {
-			paths[x] = new Path();
-			paths[x].type = findExpression(pathList.get(x).getContent(), "type *= *\"(.*?)\"");
-			paths[x].style = findExpression(pathList.get(x).getContent(), "style *= *\"(.*?)\"");
-			paths[x].id = findExpression(pathList.get(x).getContent(), "id *= *\"(.*?)\"");
-		}
+		// PATHS AND GROUPS PARSING
 		
-		// Creating groups list for finding transforms
+		// One top-down pass over the tree builds groups and paths. Tags are in document order, so the parent of every tag is visited before the tag itself
+		// and the nearest group enclosing every tag is known from its parent. It takes time linear in the number of tags, however deep groups are nested.
+		ArrayList<Tag> pathList = new ArrayList<Tag>();
+		ArrayList<Path> pathObjects = new ArrayList<Path>();
 		ArrayList<Group> groupList = new ArrayList<Group>();
-		// Finding group tags
-		for(Tag tag : tagList) if(tag.getName().equals("g")) {
-			// Finding transform in every group tag
-			String transformString = findExpression(tag.getContent(), "transform *= *\" *translate *(.*?) *\"");
-			if(transformString == null) transformString = "0, 0";
-			double[] transform = findNumbers(transformString);
-			groupList.add(new Group(tag, transform[0], transform[1]));
-		}
-		
-		// Parsing transforms
-		for(int x = 0;x < paths.length;x++) {
-			for(Group group : groupList) if(group.getTag().contains(pathList.get(x))) {
-				paths[x].transformX += group.getTransformX();
-				paths[x].transformY += group.getTransformY();
-			}
-		}
-		
-		// Parsing commands
-		Command[] commands = null;
-		for(int x = 0;x < paths.length;x++) {
-			// Extracting commands in form of string from path string
-			String commandsString = findExpression(pathList.get(x).getContent(), "\\Wd *= *\"(.*?)\"");
-			
-			// Split commandsString into the form of strings containing individual commands. (Variable commandsString contains bunch of all commands of path)
-			ArrayList<String> commandList = new ArrayList<String>();
-			Pattern pattern = Pattern.compile("[a-df-zA-DF-Z]");
-			Matcher matcher = pattern.matcher(commandsString);
-			matcher.find();
-			int previousLetterIndex = matcher.start();
-			while(matcher.find()) {
-				commandList.add(commandsString.substring(previousLetterIndex, matcher.start()));
-				previousLetterIndex = matcher.start();
+		HashMap<Tag, Group> enclosingGroups = new HashMap<Tag, Group>();
+		for(Tag tag : tagList) {
+			Group parent = tag.getParent() == null ? null : enclosingGroups.get(tag.getParent());
+			if(tag.getName().equals("g")) {
+				Group group = new Group(tag, parseTransform(tag.getAttribute("transform")));
+				group.parent = parent;
+				// Matrix of the group accumulates transforms of all groups it's nested in
+				if(parent != null) {
+					group.matrix = multiply(parent.matrix, group.transform);
+					parent.groups.add(group);
+				}
+				group.parsed = true;
+				groupList.add(group);
+				enclosingGroups.put(tag, group);
 			}
-			commandList.add(commandsString.substring(previousLetterIndex, commandsString.length()));
-			
-			// PARSING COMMAND
-			// Creating an array of Command objects
-			commands = new Command[commandList.size()];
-			
-			// Do for every command. This loop searches for letters and numbers in particular command strings, then it fills objects of type Command with this data
-			for(int y = 0;y < commands.length;y++) {
-			
-				// Parsing letter
-				pattern = Pattern.compile("\\w");
-				matcher = pattern.matcher(commandList.get(y));
-				matcher.find();
-				char letter = matcher.group().charAt(0);
-				
-				// Parsing points. X'es are detected, when ',' is after number
-				matcher = Pattern.compile("[-+]?[0-9]*\\.?[0-9]+([eE][-+]?[0-9]+)?").matcher(commandList.get(y));
-				ArrayList<Double> pointsList = new ArrayList<Double>();
-				// All, x and y points land in pointsList. Usually x's are odd and y's are even, but it depends on command, so we can't separate them now..
-				while(matcher.find()) {
-					double number = 0;
-					try {
-						number = Double.valueOf(matcher.group(0));
-						pointsList.add(number);
-					} 
-					catch(Exception e) {}
+			else {
+				if(parent != null) enclosingGroups.put(tag, parent);
+				if(tag.getName().equals("path")) {
+					Path path = new Path();
+					path.group = parent;
+					path.transform = parseTransform(tag.getAttribute("transform"));
+					path.setMatrix(multiply(parent == null ? null : parent.matrix, path.transform));
+					if(parent != null) parent.paths.add(path);
+					pathList.add(tag);
+					pathObjects.add(path);
 				}
-				
-				// Rewriting data from lists to arrays. If one of list is larger, than other, the empty spaces in smaller array are filled with zeros
-				int size = pointsList.size();
-				double[] points = new double[size];
-				for(int z = 0;z < size;z++) points[z] = pointsList.get(z);
-				
-				// Writing data into new Objects of type Command
-				commands[y] = new Command(letter, points);
 			}
+		}
+		Path[] paths = pathObjects.toArray(new Path[0]);
+		this.groups = groupList.toArray(new Group[0]);
+		if(metrics != null) lap(metrics::addTransforms, time);
 		
-			// Writing commands data into Path object
-			paths[x].commands = commands;
-			this.paths = paths;
+		// Parsing type, style, id and commands. Paths are independent, so large documents can be parsed by all cores of the pool.
+		// Lazy parsing only records where commands of every path are, they're parsed when the path is used for the first time.
+		boolean lazy = options.isLazy();
+		if(!lazy && options.getPool() != null && documentLength >= options.getParallelThreshold() && paths.length > PARSE_CHUNK_SIZE) {
+			options.getPool().invoke(new ParsePathsTask(paths, pathList, 0, paths.length));
+		}
+		else parsePaths(paths, pathList, 0, paths.length, lazy);
+		setPaths(paths);
+		if(metrics != null) metrics.addDocument();
+		event.end();
+		if(event.shouldCommit()) {
+			event.length = documentLength;
+			event.tags = tagList.size();
+			event.groups = groups.length;
+			event.paths = paths.length;
+			event.lazy = lazy;
+			event.commit();
 		}
 		
 		/*
@@ -181,148 +427,570 @@ public class SVG {
 		System.out.println("================================");
 		*/
 		
-	} // This is the end of huge constructor of SVG.
+	} // This is the end of huge parse method of SVG.
+	
+	
+	// Adds time since start to a phase of metrics and returns the current time
+	private static long lap(java.util.function.LongConsumer phase, long start) {
+		long now = System.nanoTime();
+		phase.accept(now - start);
+		return now;
+	}
+	
 	
-
 	/**
-	 * Finds real numbers in the source string and returns them as a double array.
+	 * Parses attributes of the <svg> tag: width, height, viewBox, version and id.
 	 * 
-	 * @param source The source string containing numeric values
-	 * @return A double array containing the extracted real numbers from the source string
+	 * @param svgTag The <svg> tag
 	 */
-	private double[] findNumbers(String source) {
-		if(source == null) return null;
-		Pattern pattern = Pattern.compile("([-+]?[0-9]*\\.?[0-9]+([eE][-+]?[0-9]+)?)");
-		Matcher matcher = pattern.matcher(source);
-		ArrayList<String> occurrences = new ArrayList<String>();
-		while(matcher.find()) occurrences.add(matcher.group(1));
-		double[] numbers = new double[occurrences.size()];
-		for(int x = 0;x < occurrences.size();x++) numbers[x] = Double.valueOf(occurrences.get(x));
-		return numbers;
+	private void parseRoot(Tag svgTag) {
+		// Parse width and height. If there is no width or height statement in file, exception is handled.
+		try {width = PathLexer.numbers(svgTag.getAttribute("width"))[0];} catch(Exception e) {width = 0;}
+		try {height = PathLexer.numbers(svgTag.getAttribute("height"))[0];} catch(Exception e) {height = 0;}
+		
+		// Parse viewBox
+		double[] viewBoxSize = PathLexer.numbers(svgTag.getAttribute("viewBox"));
+		viewBox = viewBoxSize == null || viewBoxSize.length < 4 ? null : new ViewBox(viewBoxSize[0], viewBoxSize[1], viewBoxSize[2], viewBoxSize[3]);
+		
+		// Parse version and id
+		version = svgTag.getAttribute("version");
+		id = svgTag.getAttribute("id");
 	}
 	
-
-	// Uses findTag() method to fill tagList with tags
+	
 	/**
-	 * Uses the findTag() method to fill the tagList with tags extracted from the source string.
+	 * Parses attributes and commands of paths from the given range. One lexer walks the d attribute of every path, its buffers are reused from path to path.
+	 * The lexer reads the d attribute straight from the document, the attribute isn't copied into a String.
 	 * 
-	 * @param source The source string containing tags to be extracted
+	 * @param paths The paths to be filled
+	 * @param pathList The path tags, tag x describes path x
+	 * @param from The index of the first path
+	 * @param to The index after the last path
+	 * @param lazy If true, commands aren't parsed, paths get a loader parsing them on first access
 	 */
-	private void findTags(String source) {
-		Tag tag = null;
-		do {
-			tag = findTag(source);
-			if(tag != null) {
-				source = removeTagFromString(source, tag);
-				tagList.add(tag);
-				findTags(tag.getContent());
+	private void parsePaths(Path[] paths, ArrayList<Tag> pathList, int from, int to, boolean lazy) {
+		PathLexer lexer = lazy ? null : new PathLexer();
+		SVGMetrics metrics = this.metrics;
+		// Times of phases and counts of letters of this chunk, added to metrics at once
+		long attributeNanos = 0, pathDataNanos = 0, time = metrics == null ? 0 : System.nanoTime();
+		long[] commands = metrics == null ? null : new long[128];
+		for(int x = from;x < to;x++) {
+			Tag tag = pathList.get(x);
+			paths[x].type = tag.getAttribute("type");
+			paths[x].style = tag.getAttribute("style");
+			paths[x].id = tag.getAttribute("id");
+			
+			// Finding range of commands in the document
+			int start = tag.getAttributeStart("d");
+			if(start < 0) continue;
+			int end = tag.getAttributeEnd(start);
+			if(lazy) {
+				paths[x].loader = new SourceLoader(tag.getSource(), start, end);
+				continue;
 			}
-		} while(tag != null);
+			if(metrics != null) {
+				long now = System.nanoTime();
+				attributeNanos += now - time;
+				time = now;
+			}
+			lexer.parse(tag.getSource(), start, end);
+			paths[x].setData(lexer);
+			if(metrics != null) {
+				for(byte letter : paths[x].letters) commands[letter & 0x7F]++;
+				long now = System.nanoTime();
+				pathDataNanos += now - time;
+				time = now;
+			}
+		}
+		if(metrics != null) metrics.addPaths(attributeNanos + System.nanoTime() - time, pathDataNanos, commands);
 	}
 	
-
-	// Finds any tag in source string and removes the tag from it
+	
 	/**
-	 * Finds the first occurrence of a tag in the source string and removes the tag from it.
-	 * 
-	 * @param source The source string in which to search for the tag
-	 * @return The extracted Tag object containing information about the found tag, or null if no tag is found
+	 * Loads commands of a path, which haven't been parsed yet.
 	 */
-	private Tag findTag(String source) {
-		
-		// Startup declarations
-		String content = null;
-		String name = null;
-		int startIndex, endIndex;
+	interface PathLoader {
 		
-		// Find anything, what is between '<' and '>'
-		Pattern pattern = Pattern.compile("<" + "(.*?)" + ">");
-		Matcher matcher = pattern.matcher(source);
-		
-		// If you found something, write it to String content, if not, return null
-		if(matcher.find()) content = matcher.group();
-		else return null;
+		/**
+		 * Parses commands of the path and sets them with Path.setData(). Called once, by the first thread using the path.
+		 * 
+		 * @param path The path to be loaded
+		 */
+		void load(Path path);
+	}
+	
+	
+	/**
+	 * Loader parsing the d attribute of a path from the range of the document recorded by a lazy parse.
+	 * Every thread has its own lexer, so paths can be loaded concurrently.
+	 */
+	private static class SourceLoader implements PathLoader {
+		private static final ThreadLocal<PathLexer> LEXER = ThreadLocal.withInitial(PathLexer::new);
+		private final CharSequence source;
+		private final int start, end;
+		SourceLoader(CharSequence source, int start, int end) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+		}
+		@Override
+		public void load(Path path) {
+			PathLexer lexer = LEXER.get();
+			lexer.parse(source, start, end);
+			path.setData(lexer);
+		}
+	}
+	
+	
+	/**
+	 * Fork-join task parsing a range of paths. Ranges larger than PARSE_CHUNK_SIZE are split in halves.
+	 */
+	private class ParsePathsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Path[] paths;
+		private final ArrayList<Tag> pathList;
+		private final int from, to;
+		ParsePathsTask(Path[] paths, ArrayList<Tag> pathList, int from, int to) {
+			this.paths = paths;
+			this.pathList = pathList;
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected void compute() {
+			if(to - from <= PARSE_CHUNK_SIZE) parsePaths(paths, pathList, from, to, false);
+			else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ParsePathsTask(paths, pathList, from, middle), new ParsePathsTask(paths, pathList, middle, to));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Reads the whole file into a byte buffer. Files larger than MAP_THRESHOLD are mapped into memory, smaller ones are read with one bulk read.
+	 * 
+	 * @param file The file to read
+	 * @return The buffer containing the file, positioned at 0
+	 * @throws IOException If the file can't be read or is larger than 2 GB
+	 */
+	private static ByteBuffer read(java.nio.file.Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE) throw new IOException("SVG file is too large: " + file);
+			if(size >= MAP_THRESHOLD) return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			ByteBuffer buffer = ByteBuffer.allocate((int)size);
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0);
+			buffer.flip();
+			return buffer;
+		}
+	}
+	
+	
+	/**
+	 * Returns the document held in the buffer. Lazy parsing reads bytes of the buffer directly, otherwise the buffer is decoded into a String.
+	 * 
+	 * @param buffer The buffer containing the document
+	 * @param options The parse options
+	 * @return The document
+	 */
+	private static CharSequence source(ByteBuffer buffer, ParseOptions options) {
+		return options.isLazy() ? new ByteSequence(buffer) : decode(buffer);
+	}
+	
+	
+	/**
+	 * Decodes UTF-8 bytes between position and limit of the buffer into a String. The position of the buffer isn't changed.
+	 * 
+	 * @param buffer The buffer to decode
+	 * @return The decoded document
+	 */
+	private static String decode(ByteBuffer buffer) {
+		if(buffer.hasArray()) return new String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
 
-		// Detect start and end index of content in source string. Start index is index of '<'. End index is index of character after '>'. source.substring(startIndex, endIndex) gives <content>.
-		startIndex = source.indexOf(content);
-		endIndex = startIndex + content.length();
-		
-		// Detect name of tag
-		pattern = Pattern.compile("\\w+");
-		matcher = pattern.matcher(content);
-		if(matcher.find()) name = matcher.group();
-		
-		// Remove angle brackets from content. Content shouldn't contain his angle brackets <>, because if function findTag() tried to find a tag in it, then it would find whole tag as target
-		content = content.substring(1, content.length() - 1);
+	// Scans the source once from left to right and returns tags in document order
+	/**
+	 * Scans the source once and returns the tags found in it.
+	 * 
+	 * Tags are added in document order. Every tag gets its absolute start and end offsets in the source
+	 * and a reference to the tag it is nested in, so the document tree is known after this single pass.
+	 * End tags like </g> are matched against the stack of open tags, comments, processing instructions,
+	 * declarations and CDATA sections are skipped. Tags keep only offsets, no text is copied from the source.
+	 * 
+	 * @param source The source containing tags to be extracted
+	 * @return The tags
+	 */
+	private ArrayList<Tag> findTags(CharSequence source) {
+		ArrayList<Tag> tagList = new ArrayList<Tag>();
+		ArrayList<Tag> openTags = new ArrayList<Tag>();
+		int length = source.length();
+		int index = indexOf(source, '<', 0);
 		
-		// Create new object of class Tag and fill it with acquired data 
-		Tag tag = new Tag(name, content, startIndex, endIndex);
+		while(index >= 0 && index < length - 1) {
+			char next = source.charAt(index + 1);
+			
+			// Comments, CDATA sections, <?xml ...?> and <!DOCTYPE ...> don't produce tags
+			if(startsWith(source, "<!--", index)) index = skipPast(source, "-->", index + 4);
+			else if(startsWith(source, "<![CDATA[", index)) index = skipPast(source, "]]>", index + 9);
+			else if(next == '?') index = skipPast(source, "?>", index + 2);
+			else if(next == '!') index = skipDeclaration(source, index + 2);
+			
+			// End tag closes the nearest open tag with the same name, and every tag left open inside it
+			else if(next == '/') {
+				int nameEnd = nameEnd(source, index + 2);
+				int end = skipPast(source, ">", nameEnd);
+				for(int x = openTags.size() - 1;x >= 0;x--) if(regionMatches(source, index + 2, nameEnd, openTags.get(x).getName())) {
+					while(openTags.size() > x) openTags.remove(openTags.size() - 1).endIndex = end;
+					break;
+				}
+				index = end;
+			}
+			
+			// Start tag or empty element tag
+			else {
+				int nameEnd = nameEnd(source, index + 1);
+				int close = findTagEnd(source, nameEnd);
+				int contentEnd = close < 0 ? length : close;
+				boolean empty = close > 0 && source.charAt(close - 1) == '/';
+				Tag parent = openTags.isEmpty() ? null : openTags.get(openTags.size() - 1);
+				Tag tag = new Tag(tagName(source, index + 1, nameEnd), source, index + 1, contentEnd, index, close < 0 ? length : close + 1);
+				tag.parent = parent;
+				if(parent != null) parent.children.add(tag);
+				tagList.add(tag);
+				if(!empty) openTags.add(tag);
+				index = tag.getEndIndex();
+			}
+			
+			index = indexOf(source, '<', index);
+		}
 		
-		return tag;
+		// Tags that were never closed end with the document
+		for(Tag tag : openTags) tag.endIndex = length;
+		return tagList;
 	}
 	
-
+	
+	// Returns the tag name, the most common names are shared constants, so thousands of path tags don't keep their own copies
+	private static String tagName(CharSequence source, int start, int end) {
+		if(regionMatches(source, start, end, "path")) return "path";
+		if(regionMatches(source, start, end, "g")) return "g";
+		if(regionMatches(source, start, end, "svg")) return "svg";
+		return source.subSequence(start, end).toString();
+	}
+	
+	
+	/**
+	 * Returns the index of the first character after the tag name that starts at the given index.
+	 * 
+	 * @param source The source
+	 * @param index The index of the first character of the name
+	 * @return The index of the first character, which doesn't belong to the name
+	 */
+	private static int nameEnd(CharSequence source, int index) {
+		int length = source.length();
+		while(index < length) {
+			char c = source.charAt(index);
+			if(c == '>' || c == '/' || c == '=' || Character.isWhitespace(c)) break;
+			index++;
+		}
+		return index;
+	}
+	
+	
+	/**
+	 * Finds the '>' character closing a start tag. Quoted attribute values are skipped, so they may contain '>'.
+	 * 
+	 * @param source The source
+	 * @param index The index to start searching from
+	 * @return The index of '>' or -1 if the tag is never closed
+	 */
+	private static int findTagEnd(CharSequence source, int index) {
+		int length = source.length();
+		while(index < length) {
+			char c = source.charAt(index);
+			if(c == '>') return index;
+			if(c == '"' || c == '\'') {
+				index = indexOf(source, c, index + 1);
+				if(index < 0) return -1;
+			}
+			index++;
+		}
+		return -1;
+	}
+	
+	
 	/**
-	 * Removes the specified tag content from the source string and returns the modified string.
+	 * Returns the index of the first character after the given terminator.
 	 * 
-	 * @param source The source string from which to remove the Tag
-	 * @param tag The tag to be removed, containing the content to be deleted
-	 * @return A new string with the specified tag content removed
+	 * @param source The source
+	 * @param terminator The string to search for
+	 * @param index The index to start searching from
+	 * @return The index right after the terminator, or the length of the source if there is no terminator
 	 */
-	private String removeTagFromString(String source, Tag tag) {
-		return source.replace("<" + tag.getContent() + ">", "");
+	private static int skipPast(CharSequence source, String terminator, int index) {
+		int length = source.length();
+		for(int found = indexOf(source, terminator.charAt(0), index);found >= 0;found = indexOf(source, terminator.charAt(0), found + 1)) {
+			if(startsWith(source, terminator, found)) return found + terminator.length();
+		}
+		return length;
 	}
 	
 	
-	// Returns source string with replaced </...> endtags with /> endTags. It makes finding tags easy and it's done once.
 	/**
-	 * Replaces all </...> end tags with /> end tags in the source string, simplifying tag identification.
+	 * Skips a <!...> declaration, which may contain an internal subset in square brackets like <!DOCTYPE svg [ ... ]>.
 	 * 
-	 * This method modifies the source string by replacing the traditional </...> end tags
-	 * with self-closing style end tags like />. This replacement simplifies the process of
-	 * identifying and handling tags in the source string.
+	 * @param source The source
+	 * @param index The index of the first character after "<!"
+	 * @return The index right after the declaration
+	 */
+	private static int skipDeclaration(CharSequence source, int index) {
+		int length = source.length();
+		int depth = 0;
+		while(index < length) {
+			char c = source.charAt(index++);
+			if(c == '[') depth++;
+			else if(c == ']') depth--;
+			else if(c == '>' && depth <= 0) return index;
+		}
+		return length;
+	}
+	
+	
+	/**
+	 * Finds the value of an attribute in the start tag between from and to index.
 	 * 
-	 * @param source The source string in which to replace the end tags
-	 * @return A new string with </...> end tags replaced by /> end tags
+	 * @param source The source
+	 * @param from The index of the first character of the tag name
+	 * @param to The index of the '>' character closing the tag
+	 * @param name The name of the attribute
+	 * @return The index of the first character of the value, or -1 if the tag has no such attribute. The character before the value is its quote, if the value is quoted.
 	 */
-	private String unifyEndTags(String source) {
-		Pattern pattern = Pattern.compile("</" + "(.*?)" + ">");
-		Matcher matcher = pattern.matcher(source);
-		return matcher.replaceAll("/>");
+	private static int findAttribute(CharSequence source, int from, int to, String name) {
+		int index = nameEnd(source, from);
+		while(index < to) {
+			char c = source.charAt(index);
+			if(c == '/' || Character.isWhitespace(c)) {
+				index++;
+				continue;
+			}
+			int nameEnd = nameEnd(source, index);
+			if(nameEnd == index) nameEnd++;
+			boolean found = regionMatches(source, index, nameEnd, name);
+			index = nameEnd;
+			while(index < to && Character.isWhitespace(source.charAt(index))) index++;
+			if(index >= to || source.charAt(index) != '=') continue;
+			index++;
+			while(index < to && Character.isWhitespace(source.charAt(index))) index++;
+			if(index >= to) return -1;
+			c = source.charAt(index);
+			int valueStart = c == '"' || c == '\'' ? index + 1 : index;
+			if(found) return valueStart;
+			index = attributeEnd(source, valueStart, to) + 1;
+		}
+		return -1;
+	}
+	
+	
+	/**
+	 * Returns the index after the last character of an attribute value found by findAttribute().
+	 * 
+	 * @param source The source
+	 * @param valueStart The index of the first character of the value
+	 * @param to The index of the '>' character closing the tag
+	 * @return The index of the closing quote, or of the first whitespace after an unquoted value
+	 */
+	private static int attributeEnd(CharSequence source, int valueStart, int to) {
+		char quote = source.charAt(valueStart - 1);
+		if(quote == '"' || quote == '\'') {
+			int end = indexOf(source, quote, valueStart);
+			return end < 0 || end > to ? to : end;
+		}
+		int end = valueStart;
+		while(end < to && !Character.isWhitespace(source.charAt(end)) && source.charAt(end) != '/') end++;
+		return end;
+	}
+	
+	
+	// Returns the index of the character in the source or -1. Strings are searched with their own fast indexOf().
+	private static int indexOf(CharSequence source, char c, int from) {
+		if(source instanceof String) return ((String)source).indexOf(c, from);
+		for(int index = from, length = source.length();index < length;index++) if(source.charAt(index) == c) return index;
+		return -1;
+	}
+	
+	
+	// Checks if the source contains the prefix at the given index
+	private static boolean startsWith(CharSequence source, String prefix, int index) {
+		if(index + prefix.length() > source.length()) return false;
+		for(int x = 0;x < prefix.length();x++) if(source.charAt(index + x) != prefix.charAt(x)) return false;
+		return true;
+	}
+	
+	
+	// Checks if characters of the source between start and end are equal to the string
+	private static boolean regionMatches(CharSequence source, int start, int end, String string) {
+		return end - start == string.length() && startsWith(source, string, start);
 	}
 	
 	
 	/**
-	 * Finds and returns the expression from the source string based on the provided regular expression.
+	 * Parses the transform attribute into an affine matrix.
 	 * 
-	 * This method searches for a substring within the source string that matches the given regular expression.
-	 * If a match is found, the captured expression is returned; otherwise, null is returned.
+	 * Matrix is {a, b, c, d, e, f}, as in matrix(a b c d e f), so point (x, y) is transformed to (ax + cy + e, bx + dy + f).
+	 * It's the order of AffineTransform.getMatrix(). Supported functions are matrix, translate, scale, rotate, skewX and skewY,
+	 * functions listed one after another are composed, so the last one is applied to points first.
 	 * 
-	 * @param source The source string in which to search for the expression
-	 * @param regex The regular expression pattern to match the desired expression
-	 * @return The captured expression if found, or null if no match is found
+	 * @param transform The value of the transform attribute, may be null
+	 * @return The matrix or null if there are no transform functions
 	 */
-	private String findExpression(String source, String regex) {
-		Pattern p = Pattern.compile(regex);
-		Matcher matcher = p.matcher(source);
-		return matcher.find() ? matcher.group(1) : null;
+	static double[] parseTransform(String transform) {
+		if(transform == null) return null;
+		double[] matrix = null;
+		Matcher matcher = TRANSFORM_FUNCTION.matcher(transform);
+		while(matcher.find()) {
+			double[] n = PathLexer.numbers(matcher.group(2));
+			double[] function = null;
+			switch(matcher.group(1)) {
+			case "matrix":
+				if(n.length >= 6) function = Arrays.copyOf(n, 6);
+				break;
+			case "translate":
+				if(n.length >= 1) function = new double[] {1, 0, 0, 1, n[0], n.length > 1 ? n[1] : 0};
+				break;
+			case "scale":
+				if(n.length >= 1) function = new double[] {n[0], 0, 0, n.length > 1 ? n[1] : n[0], 0, 0};
+				break;
+			case "rotate":
+				if(n.length >= 1) {
+					double angle = Math.toRadians(n[0]);
+					double cos = Math.cos(angle), sin = Math.sin(angle);
+					// rotate(a cx cy) rotates around (cx, cy): translate(cx cy) rotate(a) translate(-cx -cy)
+					double cx = n.length >= 3 ? n[1] : 0, cy = n.length >= 3 ? n[2] : 0;
+					function = new double[] {cos, sin, -sin, cos, cx - cos * cx + sin * cy, cy - sin * cx - cos * cy};
+				}
+				break;
+			case "skewX":
+				if(n.length >= 1) function = new double[] {1, 0, Math.tan(Math.toRadians(n[0])), 1, 0, 0};
+				break;
+			case "skewY":
+				if(n.length >= 1) function = new double[] {1, Math.tan(Math.toRadians(n[0])), 0, 1, 0, 0};
+				break;
+			}
+			matrix = multiply(matrix, function);
+		}
+		return matrix;
+	}
+	
+	
+	/**
+	 * Returns product m * n of affine matrices, which applies n first and then m. Null means identity.
+	 * 
+	 * @param m The outer matrix or null
+	 * @param n The inner matrix or null
+	 * @return The product, a new array, or one of the arguments if the other one is null
+	 */
+	static double[] multiply(double[] m, double[] n) {
+		if(m == null) return n;
+		if(n == null) return m;
+		double[] product = new double[6];
+		multiply(m, n, product);
+		return product;
+	}
+	
+	
+	/**
+	 * Returns the matrix of the transform in the order of AffineTransform.getMatrix(), or null if it's null or identity.
+	 */
+	static double[] toMatrix(AffineTransform transform) {
+		if(transform == null || transform.isIdentity()) return null;
+		double[] matrix = new double[6];
+		transform.getMatrix(matrix);
+		return matrix;
+	}
+	
+	
+	/**
+	 * Writes product m * n of affine matrices into the product array, which must not be m or n.
+	 */
+	static void multiply(double[] m, double[] n, double[] product) {
+		product[0] = m[0] * n[0] + m[2] * n[1];
+		product[1] = m[1] * n[0] + m[3] * n[1];
+		product[2] = m[0] * n[2] + m[2] * n[3];
+		product[3] = m[1] * n[2] + m[3] * n[3];
+		product[4] = m[0] * n[4] + m[2] * n[5] + m[4];
+		product[5] = m[1] * n[4] + m[3] * n[5] + m[5];
+	}
+	
+	
+	/**
+	 * Returns the largest factor the matrix stretches lengths by, its largest singular value. A circle of radius r becomes an ellipse, whose larger radius is r * scale.
+	 */
+	static double getScale(double[] m) {
+		double sum = m[0] * m[0] + m[1] * m[1] + m[2] * m[2] + m[3] * m[3];
+		double determinant = m[0] * m[3] - m[1] * m[2];
+		return Math.sqrt((sum + Math.sqrt(Math.max(0, sum * sum - 4 * determinant * determinant))) / 2);
 	}
 	
 	
 	/**
 	 * Represents a group of SVG elements that share a common transformation.
+	 * 
+	 * Groups form a tree: every group knows the group it's nested in, groups nested directly in it and its paths.
 	 */
 	public class Group {
 		private Tag tag;
-		private double transformX, transformY;
+		private Group parent;
+		private ArrayList<Group> groups = new ArrayList<Group>();
+		private ArrayList<Path> paths = new ArrayList<Path>();
+		
+		// Own transform of the group and transform accumulated from the root of the document, computed once when the group is created. Null means identity.
+		private double[] transform, matrix;
+		
+		// True if the group is one of groups of the SVG, groups made by the public constructor aren't
+		private boolean parsed;
+		
 		public Group(Tag tag, double transformX, double transformY) {
+			this(tag, transformX == 0 && transformY == 0 ? null : new double[] {1, 0, 0, 1, transformX, transformY});
+		}
+		private Group(Tag tag, double[] transform) {
 			this.tag = tag;
-			this.transformX = transformX;
-			this.transformY = transformY;
+			this.transform = transform;
+			this.matrix = transform;
 		}
 		public Tag getTag() {return tag;}
-		public double getTransformX() {return transformX;}
-		public double getTransformY() {return transformY;}
+		public double getTransformX() {return transform == null ? 0 : transform[4];}
+		public double getTransformY() {return transform == null ? 0 : transform[5];}
+		public AffineTransform getTransform() {return transform == null ? new AffineTransform() : new AffineTransform(transform);}
+		public Group getParent() {return parent;}
+		public ArrayList<Group> getGroups() {return groups;}
+		public ArrayList<Path> getPaths() {return paths;}
+		
+		// Checks if this group is one of groups of the SVG
+		private boolean isIn(SVG svg) {return svg == SVG.this && parsed;}
+		
+		/**
+		 * Replaces the transform attribute of this group. Transforms of groups and paths nested in it are composed again,
+		 * so the time depends on the size of the group, not of the document.
+		 * 
+		 * @param transform The new transform or null for identity
+		 * @see Path#setPathData(String)
+		 */
+		public void setTransform(AffineTransform transform) {
+			this.transform = toMatrix(transform);
+			updateMatrix();
+		}
+		
+		// Composes matrices of this group and of everything nested in it again
+		private void updateMatrix() {
+			matrix = multiply(parent == null ? null : parent.matrix, transform);
+			for(Group group : groups) group.updateMatrix();
+			for(Path path : paths) path.updateMatrix();
+		}
 	}
 	
 	
@@ -330,17 +998,203 @@ public class SVG {
 	 * Represents a path in an SVG file, consisting of drawing commands.
 	 * 
 	 * It's a very important class, storage of figures to be drawn. There is an array of them in the top of SVG class. They're parsed in SVG class constructor.
+	 * Commands are stored packed: one letter per command in letters array, numbers of all commands one after another in coordinates array,
+	 * and numbers of command x are coordinates[offsets[x]] ... coordinates[offsets[x + 1] - 1]. It costs three arrays per path instead of objects per command.
 	 */
 	public class Path {
 		private String type, style, id;
-		private Command[] commands;
+		private byte[] letters = new byte[0];
+		private int[] offsets = {0};
+		private double[] coordinates = new double[0];
 		private double transformX, transformY;
+		private Group group;
+		
+		// Transform composed from transforms of all enclosing groups and of the path itself, null means identity
+		private double[] matrix;
+		
+		// Own transform of the path, matrix is the matrix of the group times this one. Null means identity.
+		private double[] transform;
+		
+		// Neighbours of the path in the list of paths of the SVG, and its key in document order, ascending along the list
+		private Path previous, next;
+		private long order;
+		
+		// Slot of the path in the spatial index of the SVG, -1 if it isn't indexed
+		private int slot = -1;
+		
+		// Incremented on every change, so cached flattenings of older revisions aren't used
+		private volatile int revision;
+		
+		// Bounding box computed on first request, NO_BOUNDS if the path has no points
+		private volatile Rectangle2D bounds;
+		
+		// Shape with curves kept as curves, built on first request
+		private volatile Shape shape;
+		
+		// Loader of commands, which haven't been parsed yet. It's cleared after loading, so the check is one volatile read.
+		private volatile PathLoader loader;
+		
 		public String getType() {return type;}
 		public String getStyle() {return style;}
 		public String getId() {return id;}
-		public Command[] getCommands() {return commands;}
 		public double getTransformX() {return transformX;}
 		public double getTransformY() {return transformY;}
+		public Group getGroup() {return group;}
+		
+		/**
+		 * Returns the transform of this path composed from transform attributes of all enclosing groups and of the path itself.
+		 * It's applied by draw(), getTransformX() and getTransformY() are its translation part.
+		 * 
+		 * @return A new AffineTransform, identity if the path isn't transformed
+		 */
+		public AffineTransform getTransform() {return matrix == null ? new AffineTransform() : new AffineTransform(matrix);}
+		
+		/**
+		 * Returns the bounding box of this path in coordinates of the document, with the transform of the path applied.
+		 * 
+		 * The box is computed analytically from endpoints of segments and extreme points of Bezier curves and arcs, so it's exact
+		 * and doesn't depend on how curves are flattened. It's computed once and cached.
+		 * 
+		 * @return A copy of the bounding box, or null if the path has no points
+		 */
+		public Rectangle2D getBounds() {
+			Rectangle2D bounds = this.bounds;
+			if(bounds == null) {
+				bounds = new PathBounds().getBounds(this);
+				if(bounds == null) bounds = NO_BOUNDS;
+				this.bounds = bounds;
+			}
+			return bounds == NO_BOUNDS ? null : (Rectangle2D)bounds.clone();
+		}
+		
+		/**
+		 * Returns this path as a Java2D shape in coordinates of the document, with the transform of the path applied.
+		 * 
+		 * Nothing is flattened: lines, quadratic and cubic Bezier curves become segments of the shape directly and every arc becomes
+		 * cubic curves, one per quarter of the ellipse, so Java2D can flatten and fill the path itself. The shape is built once and cached,
+		 * all callers get the same instance, which must not be modified.
+		 * 
+		 * @return The shape of this path, filled with the nonzero winding rule
+		 */
+		public Shape toShape() {
+			Shape shape = this.shape;
+			if(shape == null) this.shape = shape = new ShapeBuilder().build(this);
+			return shape;
+		}
+		
+		/**
+		 * Replaces commands of this path with commands parsed from the path data, like the d attribute.
+		 * 
+		 * Only this path is parsed. Its bounds and shape are computed again when they're needed, its flattened polylines aren't used from caches
+		 * anymore and the spatial index of the SVG is updated with its new bounds. The SVG must not be drawn or queried by other threads meanwhile.
+		 * 
+		 * @param pathData The path data, e.g. "M0 0 L10 10"
+		 */
+		public void setPathData(String pathData) {
+			PathLexer lexer = new PathLexer();
+			lexer.parse(pathData, 0, pathData.length());
+			synchronized(this) {
+				loader = null;
+				setData(lexer);
+			}
+			changed(this);
+		}
+		
+		/**
+		 * Replaces the transform attribute of this path. It's composed with transforms of enclosing groups, as the parsed attribute was.
+		 * 
+		 * @param transform The new transform or null for identity
+		 * @see #setPathData(String)
+		 */
+		public void setTransform(AffineTransform transform) {
+			this.transform = toMatrix(transform);
+			updateMatrix();
+		}
+		
+		// Composes the matrix again after the transform of this path or of an enclosing group has changed
+		private void updateMatrix() {
+			setMatrix(multiply(group == null ? null : group.matrix, transform));
+			changed(this);
+		}
+		
+		int getRevision() {return revision;}
+		
+		// Key of the path in document order, paths earlier in the document have smaller keys
+		long getOrder() {return order;}
+		
+		// Checks if this path is in the list of paths of the SVG it was created by
+		private boolean isIn(SVG svg) {return svg == SVG.this && (previous != null || svg.firstPath == this);}
+		
+		// Composed matrix, the array is not copied and must not be modified
+		double[] getMatrix() {return matrix;}
+		
+		void setMatrix(double[] matrix) {
+			this.matrix = matrix;
+			transformX = matrix == null ? 0 : matrix[4];
+			transformY = matrix == null ? 0 : matrix[5];
+		}
+		public int getCommandCount() {load(); return letters.length;}
+		public char getLetter(int command) {load(); return (char)letters[command];}
+		public int getPointCount(int command) {load(); return offsets[command + 1] - offsets[command];}
+		public double getPoint(int command, int index) {load(); return coordinates[offsets[command] + index];}
+		
+		/**
+		 * Returns commands of this path as Command objects. The array is built from packed data on every call,
+		 * so drawing and other hot code should use getCommandCount(), getLetter() and getPoint() instead.
+		 * 
+		 * @return A new array of commands of this path
+		 */
+		public Command[] getCommands() {
+			load();
+			Command[] commands = new Command[letters.length];
+			for(int x = 0;x < commands.length;x++) commands[x] = new Command((char)letters[x], Arrays.copyOfRange(coordinates, offsets[x], offsets[x + 1]));
+			return commands;
+		}
+		
+		/**
+		 * Checks if commands of this path have been parsed. Paths of lazily parsed documents are parsed on first access to their commands.
+		 * 
+		 * @return True if commands are parsed
+		 */
+		public boolean isLoaded() {return loader == null;}
+		
+		// Parses commands on first access. Only one thread runs the loader, others wait for it and then see its result.
+		private void load() {
+			if(loader == null) return;
+			synchronized(this) {
+				PathLoader loader = this.loader;
+				if(loader == null) return;
+				loader.load(this);
+				this.loader = null;
+			}
+		}
+		
+		// Writes packed commands data from the lexer. Arrays are trimmed copies of lexer buffers, so the path keeps no spare capacity
+		void setData(PathLexer lexer) {
+			int commandCount = lexer.getCommandCount();
+			setData(Arrays.copyOf(lexer.getLetters(), commandCount), Arrays.copyOf(lexer.getOffsets(), commandCount + 1), Arrays.copyOf(lexer.getNumbers(), lexer.getNumberCount()));
+		}
+		
+		void setData(byte[] letters, int[] offsets, double[] coordinates) {
+			this.letters = letters;
+			this.offsets = offsets;
+			this.coordinates = coordinates;
+		}
+		
+		void setAttributes(String type, String style, String id) {
+			this.type = type;
+			this.style = style;
+			this.id = id;
+		}
+		
+		void setLoader(PathLoader loader) {
+			this.loader = loader;
+		}
+		
+		// Packed data, arrays are not copied and must not be modified
+		byte[] getLetters() {load(); return letters;}
+		int[] getOffsets() {load(); return offsets;}
+		double[] getCoordinates() {load(); return coordinates;}
 	}
 	
 	
@@ -349,7 +1203,7 @@ public class SVG {
 	 * 
 	 * Path is storage of Commands. Commands have a letter, which is eg. L (line), C (bezier curve) and bunch of x points and y points, so they store figures to be drawn.
 	 */
-	public class Command {
+	public static class Command {
 		private char letter;
 		private double[] points;
 		public Command(char letter, double[] points) {
@@ -365,23 +1219,158 @@ public class SVG {
 	 * Represents an SVG tag found within the SVG content.
 	 * 
 	 * Tag is first stage of parsing SVG file. Tag is <... /> statement in file and all higher level things like Paths, Groups and Commands are then parsed from Tags.
+	 * Start index is index of '<' of the start tag and end index is index of character after the end tag (or after "/>" for empty tags), both in the whole document.
+	 * Tags found in a document don't copy its text, content and attributes are read from the document when they're asked for.
 	 */
 	public class Tag {
 		private int startIndex, endIndex;
-		private String content, name;
+		private String name;
+		private CharSequence source;
+		private int contentStart, contentEnd;
+		private Tag parent;
+		private ArrayList<Tag> children = new ArrayList<Tag>();
 		public Tag(String name, String content, int startIndex, int endIndex) {
+			this(name, content, 0, content == null ? 0 : content.length(), startIndex, endIndex);
+		}
+		private Tag(String name, CharSequence source, int contentStart, int contentEnd, int startIndex, int endIndex) {
 			this.name = name;
-			this.content = content;
+			this.source = source;
+			this.contentStart = contentStart;
+			this.contentEnd = contentEnd;
 			this.startIndex = startIndex;
 			this.endIndex = endIndex;
 		}
 		public String getName() {return name;}
-		public String getContent() {return content;}
+		public String getContent() {return source == null ? null : source.subSequence(contentStart, contentEnd).toString();}
 		public int getStartIndex() {return startIndex;}
 		public int getEndIndex() {return endIndex;}
+		public Tag getParent() {return parent;}
+		public ArrayList<Tag> getChildren() {return children;}
 		public boolean contains(Tag tag) {
-			return (startIndex < tag.getStartIndex() && endIndex > tag.getEndIndex()) ? true : false;
+			return (startIndex < tag.getStartIndex() && endIndex >= tag.getEndIndex()) ? true : false;
+		}
+		
+		/**
+		 * Returns the value of the attribute of this tag.
+		 * 
+		 * @param attribute The name of the attribute, e.g. "id"
+		 * @return The value of the attribute or null if the tag has no such attribute
+		 */
+		public String getAttribute(String attribute) {
+			int start = getAttributeStart(attribute);
+			return start < 0 ? null : source.subSequence(start, getAttributeEnd(start)).toString();
+		}
+		
+		// Index of the first character of the attribute value in the source, or -1
+		int getAttributeStart(String attribute) {
+			return source == null ? -1 : findAttribute(source, contentStart, contentEnd, attribute);
 		}
+		
+		// Index after the last character of the attribute value in the source
+		int getAttributeEnd(int attributeStart) {
+			return attributeEnd(source, attributeStart, contentEnd);
+		}
+		
+		// The document, which the tag was found in
+		CharSequence getSource() {return source;}
+	}
+	
+	
+	/**
+	 * Options of parsing an SVG document.
+	 * 
+	 * By default documents are parsed on the caller's thread. With a pool set, commands of paths of documents at least
+	 * parallelThreshold characters long are parsed by all threads of the pool. The result is identical in both cases.
+	 * 
+	 * Lazy parsing only finds tags and records where commands of every path are. Commands of a path are parsed when they're used
+	 * for the first time, so opening a large document is fast and paths, which are never drawn, are never parsed.
+	 * Bytes of the document aren't decoded, lazily parsed documents read from files or buffers keep the buffer instead of a String.
+	 * 
+	 * With metrics set, times of phases of parsing and counts of commands are added to them, and the document keeps them for drawing.
+	 */
+	public static class ParseOptions {
+		private ForkJoinPool pool;
+		private int parallelThreshold = 1 << 20;
+		private boolean lazy;
+		private SVGMetrics metrics;
+		public ParseOptions setPool(ForkJoinPool pool) {
+			this.pool = pool;
+			return this;
+		}
+		public ParseOptions setParallelThreshold(int parallelThreshold) {
+			this.parallelThreshold = parallelThreshold;
+			return this;
+		}
+		public ParseOptions setLazy(boolean lazy) {
+			this.lazy = lazy;
+			return this;
+		}
+		public ParseOptions setMetrics(SVGMetrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+		public ForkJoinPool getPool() {return pool;}
+		public int getParallelThreshold() {return parallelThreshold;}
+		public boolean isLazy() {return lazy;}
+		public SVGMetrics getMetrics() {return metrics;}
+	}
+	
+	
+	/**
+	 * Options of rendering an SVG document into a pixel buffer.
+	 * 
+	 * By default paths are filled black with the nonzero rule and aren't stroked, as in SVG. Colors are ARGB, a color with zero alpha isn't drawn.
+	 * If styles are used, fill, stroke, stroke-width and fill-rule of the style attribute of a path override the options. Only colors
+	 * like #rgb, #rrggbb, none, black and white are understood, other values keep the colors of the options.
+	 * 
+	 * Stroke width is in pixels, the width of the style is in coordinates of the path and it's scaled by transforms. Stroke width 0 of the options
+	 * draws hairlines, lines one pixel wide regardless of the transform, while stroke-width 0 of a style means no stroke, as in SVG. Every row of pixels is sampled by samples sub-scanlines for anti-aliasing,
+	 * tolerance is the maximum distance between drawn lines and the real curves, in pixels.
+	 */
+	public static class RenderOptions {
+		private int fillColor = 0xFF000000;
+		private int strokeColor;
+		private double strokeWidth = 1;
+		private boolean evenOdd;
+		private boolean useStyles = true;
+		private int samples = 4;
+		private double tolerance = 0.25;
+		public RenderOptions setFillColor(int fillColor) {
+			this.fillColor = fillColor;
+			return this;
+		}
+		public RenderOptions setStrokeColor(int strokeColor) {
+			this.strokeColor = strokeColor;
+			return this;
+		}
+		public RenderOptions setStrokeWidth(double strokeWidth) {
+			this.strokeWidth = strokeWidth;
+			return this;
+		}
+		public RenderOptions setEvenOdd(boolean evenOdd) {
+			this.evenOdd = evenOdd;
+			return this;
+		}
+		public RenderOptions setUseStyles(boolean useStyles) {
+			this.useStyles = useStyles;
+			return this;
+		}
+		public RenderOptions setSamples(int samples) {
+			if(samples < 1) throw new IllegalArgumentException("At least one sample per row is needed, not " + samples);
+			this.samples = samples;
+			return this;
+		}
+		public RenderOptions setTolerance(double tolerance) {
+			this.tolerance = tolerance;
+			return this;
+		}
+		public int getFillColor() {return fillColor;}
+		public int getStrokeColor() {return strokeColor;}
+		public double getStrokeWidth() {return strokeWidth;}
+		public boolean isEvenOdd() {return evenOdd;}
+		public boolean isUseStyles() {return useStyles;}
+		public int getSamples() {return samples;}
+		public double getTolerance() {return tolerance;}
 	}
 	
 	
@@ -449,27 +1438,213 @@ public class SVG {
 
 
 	/**
-	 * Returns the ID of the SVG.
+	 * Returns the ID of the SVG.
+	 * 
+	 * @return The ID of the SVG
+	 */
+	public String getId() {
+		return id;
+	}
+
+
+	/**
+	 * Attaches a cache of flattened paths to this SVG, or detaches it if the cache is null.
+	 * 
+	 * With a cache, drawing flattens every path once for every number of curve points or tolerance and then only replays cached polylines.
+	 * 
+	 * @param flatteningCache The cache, which can be shared by several SVG objects, or null
+	 */
+	public void setFlatteningCache(FlatteningCache flatteningCache) {
+		this.flatteningCache = flatteningCache;
+	}
+	
+	
+	/**
+	 * Attaches metrics to this SVG, or detaches them if metrics are null. Draw calls add the number of drawn paths, polylines and segments
+	 * and their time to the metrics. Documents parsed with metrics in their ParseOptions have them attached already.
+	 * 
+	 * @param metrics The metrics, which can be shared by several SVG objects, or null
+	 */
+	public void setMetrics(SVGMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	
+	/**
+	 * Returns the metrics attached to this SVG.
+	 * 
+	 * @return The metrics or null if metrics aren't collected
+	 */
+	public SVGMetrics getMetrics() {
+		return metrics;
+	}
+	
+	
+	/**
+	 * Returns the cache of flattened paths attached to this SVG.
+	 * 
+	 * @return The cache or null if there is no cache
+	 */
+	public FlatteningCache getFlatteningCache() {
+		return flatteningCache;
+	}
+	
+	
+	/**
+	 * Returns an array of Path objects representing the paths in the SVG.
+	 * 
+	 * @return An array of Path objects representing the paths in the SVG
+	 */
+	public Path[] getPaths() {
+		Path[] paths = this.paths;
+		if(paths == null && pathCount >= 0) {
+			paths = new Path[pathCount];
+			int x = 0;
+			for(Path path = firstPath;path != null;path = path.next) paths[x++] = path;
+			this.paths = paths;
+		}
+		return paths;
+	}
+	
+	
+	/**
+	 * Returns the bounding box of all paths of the SVG in coordinates of the document. It's the union of bounds of paths, computed once and cached.
+	 * 
+	 * @return A copy of the bounding box, or null if there are no points in the SVG
+	 * @see Path#getBounds()
+	 */
+	public Rectangle2D getBounds() {
+		Rectangle2D bounds = this.bounds;
+		if(bounds == null) {
+			for(Path path : getPaths()) {
+				Rectangle2D pathBounds = path.getBounds();
+				if(pathBounds == null) continue;
+				if(bounds == null) bounds = pathBounds;
+				else bounds.add(pathBounds);
+			}
+			if(bounds == null) bounds = NO_BOUNDS;
+			this.bounds = bounds;
+		}
+		return bounds == NO_BOUNDS ? null : (Rectangle2D)bounds.clone();
+	}
+	
+	
+	/**
+	 * Returns all paths of the SVG as one Java2D shape, in document order. Curves are kept as curves, see Path.toShape().
+	 * The shape is built once and cached, all callers get the same instance, which must not be modified.
+	 * 
+	 * @return The shape of all paths in coordinates of the document
+	 * @see Path#toShape()
+	 */
+	public Shape toShape() {
+		Shape shape = this.shape;
+		if(shape == null) {
+			Path2D.Double union = new Path2D.Double();
+			Path[] paths = getPaths();
+			if(paths != null) for(Path path : paths) union.append(path.toShape(), false);
+			this.shape = shape = union;
+		}
+		return shape;
+	}
+	
+	
+	/**
+	 * Inserts a new path into the SVG. The path is drawn right before the next path, or after all paths if there is no next path.
+	 * 
+	 * Only the new path is parsed. It's linked into the list of paths and added to the spatial index, no other path is moved or renumbered,
+	 * so an insertion takes time proportional to the size of the path and of its group. The array returned by getPaths() is built again
+	 * on its next use. The SVG must not be drawn or queried by other threads meanwhile.
+	 * 
+	 * @param next The path following the new one, or null to add the path after all paths
+	 * @param group The group the path belongs to, which transforms it, or null
+	 * @param style The style attribute of the path or null
+	 * @param pathData The path data, e.g. "M0 0 L10 10"
+	 * @return The new path
+	 * @throws IllegalArgumentException If the next path or the group doesn't belong to this SVG, or the next path has been removed
+	 */
+	public Path insertPath(Path next, Group group, String style, String pathData) {
+		if(pathCount < 0) throw new IllegalStateException("The SVG has no paths to insert into");
+		if(next != null && !next.isIn(this)) throw new IllegalArgumentException("The next path isn't in this SVG, or it has been removed");
+		if(group != null && !group.isIn(this)) throw new IllegalArgumentException("The group isn't a group of this SVG");
+		Path path = new Path();
+		path.style = style;
+		path.group = group;
+		path.setMatrix(group == null ? null : group.matrix);
+		PathLexer lexer = new PathLexer();
+		lexer.parse(pathData, 0, pathData.length());
+		path.setData(lexer);
+		
+		Path previous = next == null ? lastPath : next.previous;
+		// Keys run out after many insertions at the same place, or at the ends of the range, then all paths get new keys
+		boolean full = previous != null && next != null ? next.order - previous.order < 2
+				: previous != null ? previous.order > Long.MAX_VALUE - ORDER_SPACING : next != null && next.order < Long.MIN_VALUE + ORDER_SPACING;
+		if(full) renumber();
+		path.order = previous == null ? (next == null ? 0 : next.order - ORDER_SPACING) : next == null ? previous.order + ORDER_SPACING : previous.order + (next.order - previous.order) / 2;
+		path.previous = previous;
+		path.next = next;
+		if(previous == null) firstPath = path;
+		else previous.next = path;
+		if(next == null) lastPath = path;
+		else next.previous = path;
+		pathCount++;
+		paths = null;
+		
+		// Paths of the group are in document order too
+		if(group != null) {
+			int x = Collections.binarySearch(group.paths, path, (a, b) -> Long.compare(a.order, b.order));
+			group.paths.add(-x - 1, path);
+		}
+		Rectangle2D bounds = this.bounds, pathBounds = path.getBounds();
+		if(bounds != null && pathBounds != null) this.bounds = bounds == NO_BOUNDS ? pathBounds : bounds.createUnion(pathBounds);
+		shape = null;
+		PathIndex index = this.index;
+		if(index != null) {
+			path.slot = index.insert(path);
+			if(index.isWorn()) this.index = null;
+		}
+		return path;
+	}
+	
+	
+	/**
+	 * Removes the path from the SVG and from its group. Like insertPath(), it takes time proportional to the size of the group, not of the document.
+	 * Cached polylines of the path aren't searched for: no key of a removed path is ever looked up again, so they're evicted like unused entries.
 	 * 
-	 * @return The ID of the SVG
+	 * @param path The path to be removed
+	 * @return False if the path isn't in this SVG
+	 * @see #insertPath(Path, Group, String, String)
 	 */
-	public String getId() {
-		return id;
+	public boolean removePath(Path path) {
+		if(!path.isIn(this)) return false;
+		if(path.previous == null) firstPath = path.next;
+		else path.previous.next = path.next;
+		if(path.next == null) lastPath = path.previous;
+		else path.next.previous = path.previous;
+		path.previous = path.next = null;
+		pathCount--;
+		paths = null;
+		if(path.group != null) path.group.paths.remove(path);
+		PathIndex index = this.index;
+		if(index != null && path.slot >= 0) index.remove(path.slot);
+		path.slot = -1;
+		bounds = null;
+		shape = null;
+		return true;
 	}
-
-
+	
+	
 	/**
-	 * Returns an array of Path objects representing the paths in the SVG.
+	 * Returns an array of all groups in the SVG in document order. A group nested in another one follows it.
 	 * 
-	 * @return An array of Path objects representing the paths in the SVG
+	 * @return An array of Group objects representing the groups in the SVG
 	 */
-	public Path[] getPaths() {return paths;}
+	public Group[] getGroups() {return groups;}
 	
 	
 	/**
 	 * Represents x and y coordinates as arrays.
 	 */
-	public class Points {
+	public static class Points {
 		public Points(double[] x, double[] y) {
 			this.x = x;
 			this.y = y;
@@ -502,12 +1677,84 @@ public class SVG {
 	 * @param points The number of points to generate
 	 * @return The Points object containing the arc points
 	 */
-	public Points getArcPoints(double x1, double y1, double rx, double ry, double phi, boolean large, boolean sweep, double x2, double y2, int points) { 
+	public static Points getArcPoints(double x1, double y1, double rx, double ry, double phi, boolean large, boolean sweep, double x2, double y2, int points) { 
 
 		// An ellipse parametric equation for getting the ellipse points is:
 		// x = cx + cos(phi) * rx * cos(t) - sin(phi) * ry * sin(t)
 		// y = cy + cos(phi) * ry * sin(t) + sin(phi) * rx * cos(t)
 		
+		double[] center = new double[6];
+		getArcCenter(x1, y1, rx, ry, phi, large, sweep, x2, y2, center);
+		
+		// calculating points, the first point is the start point and the last one is the end point of the arc
+		Points arcPoints = new Points(new double[points], new double[points]);
+		getArcPoints(center[0], center[1], center[2], center[3], phi, center[4], center[5], points, arcPoints.x, arcPoints.y, 0);
+		arcPoints.x[points - 1] = x2;
+		arcPoints.y[points - 1] = y2;
+		
+		return arcPoints;
+	}
+	
+	
+	/**
+	 * Writes points of an elliptical arc given in center parameterization into the caller's arrays.
+	 * 
+	 * Nothing is allocated and no trigonometric functions are called inside the loop: the angle is advanced by rotating
+	 * the unit vector (cos t, sin t) with the precomputed rotation by one step. Use getArcCenter() to get the center
+	 * parameterization of an arc given by its endpoints.
+	 * 
+	 * @param cx The x-coordinate of the center of the ellipse
+	 * @param cy The y-coordinate of the center of the ellipse
+	 * @param rx The x-radius of the ellipse
+	 * @param ry The y-radius of the ellipse
+	 * @param phi The rotation angle of the ellipse in degrees
+	 * @param t1 The start angle in radians
+	 * @param dt The sweep angle in radians
+	 * @param points The number of points to generate, including the endpoints
+	 * @param x The array receiving x-coordinates
+	 * @param y The array receiving y-coordinates
+	 * @param offset The index of the first point in the arrays
+	 * @return The index after the last written point
+	 */
+	public static int getArcPoints(double cx, double cy, double rx, double ry, double phi, double t1, double dt, int points, double[] x, double[] y, int offset) {
+		phi = Math.toRadians(phi);
+		double cosPhi = Math.cos(phi);
+		double sinPhi = Math.sin(phi);
+		double cos = Math.cos(t1);
+		double sin = Math.sin(t1);
+		double step = points > 1 ? dt / (points - 1) : 0;
+		double cosStep = Math.cos(step);
+		double sinStep = Math.sin(step);
+		for(int i = offset;i < offset + points;i++) {
+			x[i] = cx + cosPhi * rx * cos - sinPhi * ry * sin;
+			y[i] = cy + cosPhi * ry * sin + sinPhi * rx * cos;
+			double c = cos * cosStep - sin * sinStep;
+			sin = sin * cosStep + cos * sinStep;
+			cos = c;
+		}
+		return offset + points;
+	}
+	
+	
+	/**
+	 * Converts an elliptical arc from endpoint to center parameterization.
+	 * 
+	 * The result is written into the center array as: center x, center y, x-radius, y-radius, start angle and sweep angle in radians.
+	 * Radii are enlarged, if they are too small to connect the endpoints. Sweep angle is positive if sweep flag is set, negative otherwise.
+	 * 
+	 * @param x1 The starting x-coordinate
+	 * @param y1 The starting y-coordinate
+	 * @param rx The x-radius of the ellipse
+	 * @param ry The y-radius of the ellipse
+	 * @param phi The rotation angle of the ellipse in degrees
+	 * @param large Whether the arc sweeps a large angle
+	 * @param sweep Whether the arc sweeps in a positive direction
+	 * @param x2 The ending x-coordinate
+	 * @param y2 The ending y-coordinate
+	 * @param center The array of at least 6 elements, which receives the center parameterization
+	 */
+	public static void getArcCenter(double x1, double y1, double rx, double ry, double phi, boolean large, boolean sweep, double x2, double y2, double[] center) {
+		
 		phi = Math.toRadians(phi);
 		
 		double sinPhi = Math.sin(phi);
@@ -564,19 +1811,12 @@ public class SVG {
 		if(sweep) dt += dt < 0 ? 2 * Math.PI : 0;
 		else dt -= dt > 0 ? 2 * Math.PI : 0;
 		
-		// calculating points
-		Points arcPoints = new Points();
-		arcPoints.x = new double[points];
-		arcPoints.y = new double[points];
-		dt /= points;
-		for(int i = 0;i < points - 1;i++) {
-			arcPoints.x[i] = cx + Math.cos(phi) * rx * Math.cos(t1 + i * dt) - Math.sin(phi) * ry * Math.sin(t1 + i * dt);
-			arcPoints.y[i] = cy + Math.cos(phi) * ry * Math.sin(t1 + i * dt) + Math.sin(phi) * rx * Math.cos(t1 + i * dt);
-		}
-		arcPoints.x[arcPoints.x.length - 1] = x2;
-		arcPoints.y[arcPoints.y.length - 1] = y2;
-		
-		return arcPoints;
+		center[0] = cx;
+		center[1] = cy;
+		center[2] = rx;
+		center[3] = ry;
+		center[4] = t1;
+		center[5] = dt;
 	}
 
 
@@ -596,20 +1836,59 @@ public class SVG {
 	 * @param points The number of points to generate along the Bezier curve, including the endpoints
 	 * @return A Points object containing arrays of x and y coordinates of points along the Bezier curve
 	 */
-	public Points getQBezierPoints(double x1, double y1, double x2, double y2, double x3, double y3, int points) {
-		double[] x = new double[points];
-		double[] y = new double[points];
-		for(double t = 0, dt = 1.0 / (points - 1), T = 0;t <= 1;t += dt, T++) {
-			x[(int)T] = (1 - t)*((1 - t)*x1 + t*x2) + t*((1 - t)*x2 + t*x3);
-			y[(int)T] = (1 - t)*((1 - t)*y1 + t*y2) + t*((1 - t)*y2 + t*y3);
-		}
-		x[x.length - 1] = x3;
-		y[y.length - 1] = y3;
-		Points p = new Points(x, y);
+	public static Points getQBezierPoints(double x1, double y1, double x2, double y2, double x3, double y3, int points) {
+		Points p = new Points(new double[points], new double[points]);
+		getQBezierPoints(x1, y1, x2, y2, x3, y3, points, p.x, p.y, 0);
 		return p;
 	}
 	
 	
+	/**
+	 * Writes points along a quadratic Bezier curve into the caller's arrays.
+	 * 
+	 * Points are evaluated by forward differencing, so every point costs a few additions and nothing is allocated.
+	 * The first point is (x1, y1) and the last one is exactly (x3, y3).
+	 * 
+	 * @param x1 The x-coordinate of the first control point
+	 * @param y1 The y-coordinate of the first control point
+	 * @param x2 The x-coordinate of the second control point
+	 * @param y2 The y-coordinate of the second control point
+	 * @param x3 The x-coordinate of the third control point
+	 * @param y3 The y-coordinate of the third control point
+	 * @param points The number of points to generate along the Bezier curve, including the endpoints
+	 * @param x The array receiving x-coordinates
+	 * @param y The array receiving y-coordinates
+	 * @param offset The index of the first point in the arrays
+	 * @return The index after the last written point
+	 */
+	public static int getQBezierPoints(double x1, double y1, double x2, double y2, double x3, double y3, int points, double[] x, double[] y, int offset) {
+		if(points < 2) {
+			x[offset] = x3;
+			y[offset] = y3;
+			return offset + 1;
+		}
+		// B(t) = a t^2 + b t + P1, differences are taken with step h
+		double h = 1.0 / (points - 1);
+		double ax = x1 - 2 * x2 + x3, ay = y1 - 2 * y2 + y3;
+		double bx = 2 * (x2 - x1), by = 2 * (y2 - y1);
+		double fx = x1, fy = y1;
+		double dfx = ax * h * h + bx * h, dfy = ay * h * h + by * h;
+		double ddfx = 2 * ax * h * h, ddfy = 2 * ay * h * h;
+		int last = offset + points - 1;
+		for(int i = offset;i < last;i++) {
+			x[i] = fx;
+			y[i] = fy;
+			fx += dfx;
+			fy += dfy;
+			dfx += ddfx;
+			dfy += ddfy;
+		}
+		x[last] = x3;
+		y[last] = y3;
+		return last + 1;
+	}
+	
+	
 	/**
 	 * Calculates and returns points along a cubic Bezier curve defined by control points.
 	 * 
@@ -628,211 +1907,505 @@ public class SVG {
 	 * @param points The number of points to generate along the Bezier curve, including the endpoints
 	 * @return A Points object containing arrays of x and y coordinates of points along the Bezier curve
 	 */
-	public Points getCBezierPoints(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4, int points) {
-		double[] x = new double[points];
-		double[] y = new double[points];
-		for(double t = 0, dt = 1.0 / (points - 1), T = 0;t <= 1;t += dt, T++) {
-			x[(int)T] = x1 * Math.pow(1-t, 3) + x2 * Math.pow(1-t, 2) * t * 3 + x3 * (1-t) * Math.pow(t, 2) * 3 + x4 * 1 * Math.pow(t, 3);
-			y[(int)T] = y1 * Math.pow(1-t, 3) + y2 * Math.pow(1-t, 2) * t * 3 + y3 * (1-t) * Math.pow(t, 2) * 3 + y4 * 1 * Math.pow(t, 3);
-		}
-		x[x.length - 1] = x4;
-		y[y.length - 1] = y4;
-		Points p = new Points(x, y);
+	public static Points getCBezierPoints(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4, int points) {
+		Points p = new Points(new double[points], new double[points]);
+		getCBezierPoints(x1, y1, x2, y2, x3, y3, x4, y4, points, p.x, p.y, 0);
 		return p;
 	}
 	
 	
+	/**
+	 * Writes points along a cubic Bezier curve into the caller's arrays.
+	 * 
+	 * Points are evaluated by forward differencing, so every point costs a few additions and nothing is allocated.
+	 * The first point is (x1, y1) and the last one is exactly (x4, y4).
+	 * 
+	 * @param x1 The x-coordinate of the first control point
+	 * @param y1 The y-coordinate of the first control point
+	 * @param x2 The x-coordinate of the second control point
+	 * @param y2 The y-coordinate of the second control point
+	 * @param x3 The x-coordinate of the third control point
+	 * @param y3 The y-coordinate of the third control point
+	 * @param x4 The x-coordinate of the fourth control point
+	 * @param y4 The y-coordinate of the fourth control point
+	 * @param points The number of points to generate along the Bezier curve, including the endpoints
+	 * @param x The array receiving x-coordinates
+	 * @param y The array receiving y-coordinates
+	 * @param offset The index of the first point in the arrays
+	 * @return The index after the last written point
+	 */
+	public static int getCBezierPoints(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4, int points, double[] x, double[] y, int offset) {
+		if(points < 2) {
+			x[offset] = x4;
+			y[offset] = y4;
+			return offset + 1;
+		}
+		// B(t) = a t^3 + b t^2 + c t + P1, differences are taken with step h
+		double h = 1.0 / (points - 1);
+		double h2 = h * h, h3 = h2 * h;
+		double ax = -x1 + 3 * (x2 - x3) + x4, ay = -y1 + 3 * (y2 - y3) + y4;
+		double bx = 3 * (x1 - 2 * x2 + x3), by = 3 * (y1 - 2 * y2 + y3);
+		double cx = 3 * (x2 - x1), cy = 3 * (y2 - y1);
+		double fx = x1, fy = y1;
+		double dfx = ax * h3 + bx * h2 + cx * h, dfy = ay * h3 + by * h2 + cy * h;
+		double ddfx = 6 * ax * h3 + 2 * bx * h2, ddfy = 6 * ay * h3 + 2 * by * h2;
+		double dddfx = 6 * ax * h3, dddfy = 6 * ay * h3;
+		int last = offset + points - 1;
+		for(int i = offset;i < last;i++) {
+			x[i] = fx;
+			y[i] = fy;
+			fx += dfx;
+			fy += dfy;
+			dfx += ddfx;
+			dfy += ddfy;
+			ddfx += dddfx;
+			ddfy += dddfy;
+		}
+		x[last] = x4;
+		y[last] = y4;
+		return last + 1;
+	}
+	
+	
 	/**
 	 * Draws the paths contained in this SVG using the specified drawing method.
 	 * 
 	 * This method iterates through the paths contained in the SVG and interprets the commands within each path
 	 * to generate the corresponding lines or curves. The drawing method is provided through the 'drawLineMethod' parameter.
+	 * Transforms of paths and their groups are applied, so points come in coordinates of the document.
+	 * 
+	 * Methods named draw() divide every curve into a fixed number of points. Methods dividing curves adaptively by a tolerance have other names,
+	 * drawWithTolerance(), drawPolylines() and drawParallel(), so a literal 1 and 1.0 can't select different meanings of the same parameter.
 	 * 
 	 * @param curvePoints The number of points to generate along curves, influencing their smoothness
 	 * @param drawLineMethod The drawing method to be used for drawing lines or curves between points
+	 * @see #drawWithTolerance(double, DrawLineMethod)
 	 */
 	public void draw(int curvePoints, DrawLineMethod drawLineMethod) {
+		draw(new PathFlattener(curvePoints), drawLineMethod);
+	}
+	
+	
+	/**
+	 * Draws the paths contained in this SVG, dividing every curve adaptively.
+	 * 
+	 * The number of lines of every curve is chosen from its flatness and radius, so no line is further than tolerance from the real curve.
+	 * Small curves are drawn with a few lines and large curves with as many as they need, up to PathFlattener.MAX_CURVE_SEGMENTS.
+	 * 
+	 * @param tolerance The maximum distance between drawn lines and the real curves, in the units of drawn coordinates
+	 * @param drawLineMethod The drawing method to be used for drawing lines between points
+	 */
+	public void drawWithTolerance(double tolerance, DrawLineMethod drawLineMethod) {
+		drawPolylines(tolerance, drawLineMethod);
+	}
+	
+	
+	/**
+	 * Draws the paths contained in this SVG, dividing every curve adaptively and passing every subpath to the sink as one polyline.
+	 * 
+	 * @param tolerance The maximum distance between drawn lines and the real curves, in the units of drawn coordinates
+	 * @param sink The sink receiving polylines
+	 */
+	public void drawPolylines(double tolerance, PolylineSink sink) {
+		draw(new PathFlattener(tolerance), sink);
+	}
+	
+	
+	/**
+	 * Draws the paths contained in this SVG transformed by the view transform, e.g. scaled and moved to fit a window.
+	 * The view transform is applied after transforms of paths, while flattening, so the drawing method gets final coordinates.
+	 * 
+	 * @param curvePoints The number of points to generate along curves, influencing their smoothness
+	 * @param view The view transform or null for identity
+	 * @param drawLineMethod The drawing method to be used for drawing lines between points
+	 */
+	public void draw(int curvePoints, AffineTransform view, DrawLineMethod drawLineMethod) {
+		draw(new PathFlattener(curvePoints).setView(view), drawLineMethod);
+	}
+	
+	
+	/**
+	 * Draws the paths contained in this SVG transformed by the view transform, dividing every curve adaptively.
+	 * 
+	 * @param tolerance The maximum distance between drawn lines and the real curves, in the units of view coordinates
+	 * @param view The view transform or null for identity
+	 * @param drawLineMethod The drawing method to be used for drawing lines between points
+	 */
+	public void drawWithTolerance(double tolerance, AffineTransform view, DrawLineMethod drawLineMethod) {
+		drawPolylines(tolerance, view, drawLineMethod);
+	}
+	
+	
+	/**
+	 * Draws the paths contained in this SVG transformed by the view transform, dividing every curve adaptively and passing every subpath to the sink as one polyline.
+	 * 
+	 * @param tolerance The maximum distance between drawn lines and the real curves, in the units of view coordinates
+	 * @param view The view transform or null for identity
+	 * @param sink The sink receiving polylines
+	 */
+	public void drawPolylines(double tolerance, AffineTransform view, PolylineSink sink) {
+		draw(new PathFlattener(tolerance).setView(view), sink);
+	}
+	
+	
+	/**
+	 * Draws only the paths, whose bounding boxes intersect the viewport, dividing every curve adaptively.
+	 * 
+	 * Paths are found with a spatial index built over bounds of paths on the first call, so the time of drawing depends on the number of
+	 * visible paths, not on the size of the document. Bounds don't include the width of strokes, enlarge the viewport by half of the widest stroke to keep them.
+	 * 
+	 * @param viewport The visible rectangle in coordinates of the document
+	 * @param tolerance The maximum distance between drawn lines and the real curves, in the units of drawn coordinates
+	 * @param drawLineMethod The drawing method to be used for drawing lines between points
+	 */
+	public void drawWithTolerance(Rectangle2D viewport, double tolerance, DrawLineMethod drawLineMethod) {
+		drawPolylines(viewport, tolerance, null, drawLineMethod);
+	}
+	
+	
+	/**
+	 * Draws only the paths, whose bounding boxes intersect the viewport, passing every subpath to the sink as one polyline.
+	 * 
+	 * @param viewport The visible rectangle in coordinates of the document
+	 * @param tolerance The maximum distance between drawn lines and the real curves, in the units of drawn coordinates
+	 * @param sink The sink receiving polylines
+	 * @see #drawWithTolerance(Rectangle2D, double, DrawLineMethod)
+	 */
+	public void drawPolylines(Rectangle2D viewport, double tolerance, PolylineSink sink) {
+		drawPolylines(viewport, tolerance, null, sink);
+	}
+	
+	
+	/**
+	 * Draws only the paths, whose bounding boxes intersect the viewport, transformed by the view transform.
+	 * Typically the view transform maps the viewport onto the window.
+	 * 
+	 * @param viewport The visible rectangle in coordinates of the document, before the view transform
+	 * @param tolerance The maximum distance between drawn lines and the real curves, in the units of view coordinates
+	 * @param view The view transform or null for identity
+	 * @param drawLineMethod The drawing method to be used for drawing lines between points
+	 * @see #drawWithTolerance(Rectangle2D, double, DrawLineMethod)
+	 */
+	public void drawWithTolerance(Rectangle2D viewport, double tolerance, AffineTransform view, DrawLineMethod drawLineMethod) {
+		drawPolylines(viewport, tolerance, view, drawLineMethod);
+	}
+	
+	
+	/**
+	 * Draws only the paths, whose bounding boxes intersect the viewport, transformed by the view transform, passing every subpath to the sink as one polyline.
+	 * 
+	 * @param viewport The visible rectangle in coordinates of the document, before the view transform
+	 * @param tolerance The maximum distance between drawn lines and the real curves, in the units of view coordinates
+	 * @param view The view transform or null for identity
+	 * @param sink The sink receiving polylines
+	 * @see #drawWithTolerance(Rectangle2D, double, DrawLineMethod)
+	 */
+	public void drawPolylines(Rectangle2D viewport, double tolerance, AffineTransform view, PolylineSink sink) {
+		if(pathCount < 0) return;
+		PathFlattener flattener = new PathFlattener(tolerance).setView(view);
+		Path[] visible = getIndex().query(viewport);
+		sink = SVGMetrics.startDraw(metrics, sink);
+		for(Path path : visible) draw(flattener, path, sink);
+		SVGMetrics.finishDraw(sink, visible.length);
+	}
+	
+	
+	// Flattens every path with the flattener
+	private void draw(PathFlattener flattener, PolylineSink sink) {
+		Path[] paths = getPaths();
 		if(paths == null) return;
+		sink = SVGMetrics.startDraw(metrics, sink);
+		for(Path path : paths) draw(flattener, path, sink);
+		SVGMetrics.finishDraw(sink, paths.length);
+	}
+	
+	
+	// Flattens the path or replays its cached polylines
+	void draw(PathFlattener flattener, Path path, PolylineSink sink) {
+		PolylineBuffer polylines = flatten(flattener, path);
+		if(polylines == null) flattener.flatten(path, sink);
+		else polylines.replay(sink);
+	}
+	
+	
+	/**
+	 * Returns paths under the point, e.g. under the mouse cursor.
+	 * 
+	 * A path is under the point if the point is inside its filled area by the nonzero winding rule. Open subpaths are closed for filling, as in SVG.
+	 * Candidates are found with the spatial index of bounds, only they are flattened and tested.
+	 * 
+	 * @param x The x-coordinate of the point in coordinates of the document
+	 * @param y The y-coordinate of the point in coordinates of the document
+	 * @return Paths under the point in document order, the last one is drawn on top
+	 */
+	public Path[] pathsAt(double x, double y) {
+		return pathsAt(x, y, 0);
+	}
+	
+	
+	/**
+	 * Returns paths under the point or near it. A path is near the point if any of its drawn lines is at most distance from the point,
+	 * so thin strokes and unfilled paths can be picked too.
+	 * 
+	 * @param x The x-coordinate of the point in coordinates of the document
+	 * @param y The y-coordinate of the point in coordinates of the document
+	 * @param distance The maximum distance of the point from lines of a path, e.g. half of the stroke width
+	 * @return Paths under or near the point in document order, the last one is drawn on top
+	 * @see #pathsAt(double, double)
+	 */
+	public Path[] pathsAt(double x, double y, double distance) {
+		if(pathCount < 0) return new Path[0];
+		PathHitTest test = new PathHitTest();
+		ArrayList<Path> found = new ArrayList<Path>();
+		PathFlattener flattener = hitFlattener(distance);
+		for(Path path : getIndex().query(new Rectangle2D.Double(x - distance, y - distance, 2 * distance, 2 * distance))) {
+			test.reset(x, y, distance);
+			draw(flattener, path, test);
+			if(test.isHit()) found.add(path);
+		}
+		return found.toArray(new Path[0]);
+	}
+	
+	
+	/**
+	 * Returns paths intersecting the rectangle, e.g. a selection rectangle. A path intersects it, if any of its lines crosses the rectangle
+	 * or lies inside it, or if the rectangle lies inside the filled area of the path.
+	 * 
+	 * @param rectangle The rectangle in coordinates of the document
+	 * @return Paths intersecting the rectangle in document order
+	 */
+	public Path[] pathsIn(Rectangle2D rectangle) {
+		if(pathCount < 0) return new Path[0];
+		PathHitTest test = new PathHitTest();
+		ArrayList<Path> found = new ArrayList<Path>();
+		PathFlattener flattener = hitFlattener(0);
+		for(Path path : getIndex().query(rectangle)) {
+			test.reset(rectangle);
+			draw(flattener, path, test);
+			if(test.isHit()) found.add(path);
+		}
+		return found.toArray(new Path[0]);
+	}
+	
+	
+	// Flattener for hit tests. Its error is a small part of the distance, or of the size of the document, if the distance is 0.
+	private PathFlattener hitFlattener(double distance) {
+		Rectangle2D bounds = getBounds();
+		double size = bounds == null ? 0 : Math.max(bounds.getWidth(), bounds.getHeight());
+		double tolerance = distance > 0 ? distance / 4 : size * HIT_TOLERANCE;
+		return new PathFlattener(tolerance > 0 ? tolerance : HIT_TOLERANCE);
+	}
+	
+	
+	// Drops everything computed from the changed path: its bounds and shape, its cached polylines, by a new revision, and bounds and shape of the document.
+	// The index only gets new bounds of the path, so a change takes time proportional to the size of the path.
+	private void changed(Path path) {
+		path.bounds = null;
+		path.shape = null;
+		path.revision++;
+		bounds = null;
+		shape = null;
+		PathIndex index = this.index;
+		if(index != null && path.slot >= 0) {
+			index.update(path.slot, path.getBounds());
+			if(index.isWorn()) this.index = null;
+		}
+	}
+	
+	
+	// Returns the spatial index of paths, building it on first use
+	private PathIndex getIndex() {
+		PathIndex index = this.index;
+		if(index == null) {
+			Path[] paths = getPaths();
+			index = new PathIndex(paths);
+			for(int x = 0;x < paths.length;x++) paths[x].slot = x;
+			this.index = index;
+		}
+		return index;
+	}
+	
+	
+	// Returns cached polylines of the path, flattening and caching them if they're missing. Returns null if there is no cache.
+	private PolylineBuffer flatten(PathFlattener flattener, Path path) {
+		FlatteningCache cache = flatteningCache;
+		if(cache == null) return null;
+		FlatteningCache.Key key = new FlatteningCache.Key(path, flattener.getCurvePoints(), flattener.getTolerance(), flattener.getView());
+		PolylineBuffer polylines = cache.get(key);
+		if(polylines == null) {
+			polylines = new PolylineBuffer();
+			flattener.flatten(path, polylines);
+			cache.put(key, polylines);
+		}
+		return polylines;
+	}
+	
+	
+	/**
+	 * Draws the paths contained in this SVG, dividing every curve adaptively and flattening paths concurrently in the pool.
+	 * 
+	 * Paths are split into chunks, which are flattened by tasks of the pool. The sink is always called on the caller's thread, so it doesn't have to be thread safe.
+	 * If ordered is true, polylines come in document order, exactly as from drawPolylines(). Otherwise every chunk is passed as soon as it's flattened.
+	 * Only a limited number of chunks is flattened ahead of the sink, so memory doesn't grow with the size of the document.
+	 * 
+	 * @param tolerance The maximum distance between drawn lines and the real curves, in the units of drawn coordinates
+	 * @param sink The sink receiving polylines
+	 * @param pool The pool flattening paths, for example ForkJoinPool.commonPool()
+	 * @param ordered Whether polylines must come in document order
+	 */
+	public void drawParallel(double tolerance, PolylineSink sink, ForkJoinPool pool, boolean ordered) {
+		drawParallel(new PathFlattener(tolerance), sink, pool, ordered);
+	}
+	
+	
+	/**
+	 * Draws the paths contained in this SVG transformed by the view transform, dividing every curve adaptively and flattening paths concurrently in the pool.
+	 * 
+	 * @param tolerance The maximum distance between drawn lines and the real curves, in the units of view coordinates
+	 * @param view The view transform or null for identity
+	 * @param sink The sink receiving polylines
+	 * @param pool The pool flattening paths, for example ForkJoinPool.commonPool()
+	 * @param ordered Whether polylines must come in document order
+	 * @see #drawParallel(double, PolylineSink, ForkJoinPool, boolean)
+	 */
+	public void drawParallel(double tolerance, AffineTransform view, PolylineSink sink, ForkJoinPool pool, boolean ordered) {
+		drawParallel(new PathFlattener(tolerance).setView(view), sink, pool, ordered);
+	}
+	
+	
+	// Flattens chunks of paths in the pool, keeping at most window chunks in flight, and replays them on this thread
+	private void drawParallel(PathFlattener flattener, PolylineSink sink, ForkJoinPool pool, boolean ordered) {
+		Path[] paths = getPaths();
+		if(paths == null || paths.length == 0) return;
+		sink = SVGMetrics.startDraw(metrics, sink);
+		int parallelism = pool.getParallelism();
+		int chunkSize = Math.max(1, Math.min(PARALLEL_CHUNK_SIZE, paths.length / (parallelism * 4)));
+		int chunks = (paths.length + chunkSize - 1) / chunkSize;
+		int window = parallelism * 4;
 		
-		for(Path path : paths) {
-			
-			double x0 = 0;
-			double y0 = 0;
-			double ix = 0; // initial x
-			double iy = 0; // initial y
-			
-			for(Command command : path.getCommands()) {
-				
-				if(command.getLetter() == 'M') {
-					int x = 0, y = 1;
-					double[] p = command.getPoints();
-					ix = p[x];
-					iy = p[y];
-					if(p.length > 3) for(int t = 0;t < p.length / 2 - 1;t++)
-						drawLineMethod.drawLine(p[x], p[y], p[x += 2], p[y += 2]);
-					x0 = p[p.length - 2];
-					y0 = p[p.length - 1];
-				}
-				if(command.getLetter() == 'm') {
-					int x = 0, y = 1;
-					double[] p = command.getPoints();
-					ix = x0 + p[x];
-					iy = y0 + p[y];
-					if(p.length > 3) {
-						for(int t = 0;t < p.length / 2 - 1;t++) {
-							drawLineMethod.drawLine(x0 += p[x], y0 += p[y], x0 += p[x += 2], y0 += p[y += 2]);
-						}
-					}
-					else {
-						x0 += p[0];
-						y0 += p[1];
-					}
-				}
-				
-				if(command.getLetter() == 'H') {
-					double[] p = command.getPoints();
-					for(double d : p) drawLineMethod.drawLine(x0, y0, d, y0);
-					x0 = p[p.length - 1];
-				}
-				if(command.getLetter() == 'h') {
-					double[] p = command.getPoints();
-					for(double d : p) {
-						drawLineMethod.drawLine(x0, y0, x0 += d, y0);
-					}
-				}
-				
-				if(command.getLetter() == 'V') {
-					double[] p = command.getPoints();
-					for(double d : p) drawLineMethod.drawLine(x0, y0, x0, d);
-					y0 = p[p.length - 1];
-				}
-				if(command.getLetter() == 'v') {
-					double[] p = command.getPoints();
-					for(double d : p) {
-						drawLineMethod.drawLine(x0, y0, x0, y0 += d);
-					}
-				}
-				
-				if(command.getLetter() == 'L') {
-					int x = 0, y = 1;
-					double[] p = command.getPoints();
-					for(int t = 0;t < p.length / 2;t++) {
-						drawLineMethod.drawLine(x0, y0, p[x], p[y]);
-						x0 = p[x];
-						y0 = p[y];
-						x += 2;
-						y += 2;
-					}
-				}
-				if(command.getLetter() == 'l') {
-					int x = 0, y = 1;
-					double[] p = command.getPoints();
-					for(int t = 0;t < p.length / 2;t++) {
-						drawLineMethod.drawLine(x0, y0, x0 += p[x], y0 += p[y]);
-						x += 2;
-						y += 2;
-					}
-				}
-				
-				if(command.getLetter() == 'A') {
-					double[] p = command.getPoints();
-					for(int t = 0;t < p.length;t += 7) {
-						double rx = p[0 + t];
-						double ry = p[1 + t];
-						double phi = p[2 + t];
-						boolean large = p[3 + t] > 0 ? true : false;
-						boolean sweep = p[4 + t] > 0 ? true : false;
-						double xk = p[5 + t];
-						double yk = p[6 + t];
-						if(x0 == xk && y0 == yk) drawLineMethod.drawLine(x0, y0, xk, yk);
-						else {
-							Points ap = getArcPoints(x0, y0, rx, ry, phi, large, sweep, xk, yk, curvePoints);
-							for(int i = 0;i < ap.x.length - 1;i++) drawLineMethod.drawLine(ap.x[i], ap.y[i], ap.x[i + 1], ap.y[i + 1]);
-							x0 = xk;
-							y0 = yk;
-						}
-					}
-				}
-				if(command.getLetter() == 'a') {
-					double[] p = command.getPoints();
-					for(int t = 0;t < p.length;t += 7) {
-						double rx = p[0 + t];
-						double ry = p[1 + t];
-						double phi = p[2 + t];
-						boolean large = p[3 + t] > 0 ? true : false;
-						boolean sweep = p[4 + t] > 0 ? true : false;
-						double xk = p[5 + t];
-						double yk = p[6 + t];
-						if(x0 == xk && y0 == yk) drawLineMethod.drawLine(x0, y0, x0 + xk, x0 + yk);
-						else {
-							Points ap = getArcPoints(x0, y0, rx, ry, phi, large, sweep, x0 + xk, y0 + yk, curvePoints);
-							for(int i = 0;i < ap.x.length - 1;i++) drawLineMethod.drawLine(ap.x[i], ap.y[i], ap.x[i + 1], ap.y[i + 1]);
-							x0 += xk;
-							y0 += yk;
-						}
-					}
-				}
-				
-				if(command.getLetter() == 'Q') {
-					double[] p = command.getPoints();
-					for(int t = 0;t < p.length;t += 4) {
-						Points bp = getQBezierPoints(x0, y0, p[0 + t], p[1 + t], p[2 + t], p[3 + t], curvePoints);
-						for(int i = 0;i < bp.x.length - 1;i++) drawLineMethod.drawLine(bp.x[i], bp.y[i], bp.x[i + 1], bp.y[i + 1]);
-						x0 = bp.x[bp.x.length - 1];
-						y0 = bp.y[bp.y.length - 1];
-					}
-				}
-				if(command.getLetter() == 'q') {
-					double[] p = command.getPoints();
-					for(int t = 0;t < p.length;t += 4) {
-						Points bp = getQBezierPoints(x0, y0, x0 + p[0 + t], y0 + p[1 + t], x0 + p[2 + t], y0 + p[3 + t], curvePoints);
-						for(int i = 0;i < bp.x.length - 1;i++) drawLineMethod.drawLine(bp.x[i], bp.y[i], bp.x[i + 1], bp.y[i + 1]);
-						x0 = bp.x[bp.x.length - 1];
-						y0 = bp.y[bp.y.length - 1];
+		ArrayDeque<ForkJoinTask<PolylineBuffer[]>> inFlight = new ArrayDeque<ForkJoinTask<PolylineBuffer[]>>();
+		ExecutorCompletionService<PolylineBuffer[]> completed = ordered ? null : new ExecutorCompletionService<PolylineBuffer[]>(pool);
+		int submitted = 0;
+		for(int done = 0;done < chunks;done++) {
+			while(submitted < chunks && submitted - done < window) {
+				int from = submitted * chunkSize;
+				int to = Math.min(paths.length, from + chunkSize);
+				Callable<PolylineBuffer[]> task = () -> {
+					PathFlattener chunkFlattener = flattener.copy();
+					PolylineBuffer[] polylines = new PolylineBuffer[to - from];
+					for(int x = from;x < to;x++) {
+						polylines[x - from] = flatten(chunkFlattener, paths[x]);
+						if(polylines[x - from] == null) chunkFlattener.flatten(paths[x], polylines[x - from] = new PolylineBuffer());
 					}
+					return polylines;
+				};
+				if(ordered) inFlight.add(pool.submit(task));
+				else completed.submit(task);
+				submitted++;
+			}
+			PolylineBuffer[] polylines;
+			if(ordered) polylines = inFlight.poll().join();
+			else {
+				try {polylines = completed.take().get();}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new CancellationException("Interrupted while drawing");
 				}
-				
-				if(command.getLetter() == 'C') {
-					double[] p = command.getPoints();
-					for(int t = 0;t < p.length;t += 6) {
-						Points bp = getCBezierPoints(x0, y0, p[0 + t], p[1 + t], p[2 + t], p[3 + t], p[4 + t], p[5 + t], curvePoints);
-						for(int i = 0;i < bp.x.length - 1;i++) drawLineMethod.drawLine(bp.x[i], bp.y[i], bp.x[i + 1], bp.y[i + 1]);
-						x0 = bp.x[bp.x.length - 1];
-						y0 = bp.y[bp.y.length - 1];
-					}
-				}
-				if(command.getLetter() == 'c') {
-					double[] p = command.getPoints();
-					for(int t = 0;t < p.length;t += 6) {
-						Points bp = getCBezierPoints(x0, y0, x0 + p[0 + t], y0 + p[1 + t], x0 + p[2 + t], y0 + p[3 + t], x0 + p[4 + t], y0 + p[5 + t], curvePoints);
-						for(int i = 0;i < bp.x.length - 1;i++) drawLineMethod.drawLine(bp.x[i], bp.y[i], bp.x[i + 1], bp.y[i + 1]);
-						x0 = bp.x[bp.x.length - 1];
-						y0 = bp.y[bp.y.length - 1];
-					}
-				}
-
-				if(command.getLetter() == 'Z') {
-					drawLineMethod.drawLine(x0, y0, ix, iy);
-					x0 = ix;
-					y0 = iy;
-				}
-				if(command.getLetter() == 'z') {
-					drawLineMethod.drawLine(x0, y0, ix, iy);
-					x0 = ix;
-					y0 = iy;
+				catch(ExecutionException e) {
+					if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+					if(e.getCause() instanceof Error) throw (Error)e.getCause();
+					throw new IllegalStateException(e.getCause());
 				}
-				
 			}
-		} // end of paths loop
-			
+			for(PolylineBuffer buffer : polylines) buffer.replay(sink);
+		}
+		SVGMetrics.finishDraw(sink, paths.length);
+	}
+	
+	
+	/**
+	 * Renders the paths contained in this SVG into a buffer of pixels, without AWT.
+	 * 
+	 * Paths are flattened and filled by a scanline rasterizer with anti-aliased edges, and then stroked, one after another in document order.
+	 * Pixels are ARGB, row after row, like in BufferedImage.TYPE_INT_ARGB. Paths are composited over the current content of the buffer,
+	 * so it should be cleared to the background first. Only paths, whose bounds can be seen in the buffer, are flattened.
+	 * 
+	 * @param argb The buffer of at least width * height pixels
+	 * @param width The width of the image in pixels
+	 * @param height The height of the image in pixels
+	 * @param transform The transform from coordinates of the document to pixels or null for identity
+	 * @param options The options of rendering or null for defaults
+	 */
+	public void render(int[] argb, int width, int height, AffineTransform transform, RenderOptions options) {
+		if(options == null) options = new RenderOptions();
+		Rasterizer rasterizer = new Rasterizer(argb, width, height, options);
+		Path[] paths = getPaths();
+		if(paths == null || width == 0 || height == 0) return;
+		PathFlattener flattener = new PathFlattener(options.getTolerance()).setView(transform);
+		PolylineSink sink = SVGMetrics.startDraw(metrics, rasterizer);
+		int rendered = 0;
+		for(Path path : paths) if(render(rasterizer, sink, flattener, transform, path)) rendered++;
+		SVGMetrics.finishDraw(sink, rendered);
+	}
+	
+	
+	// Renders the path, if its bounds enlarged by its stroke can be seen. Polylines go to the rasterizer through the sink.
+	private boolean render(Rasterizer rasterizer, PolylineSink sink, PathFlattener flattener, AffineTransform transform, Path path) {
+		Rectangle2D bounds = path.getBounds();
+		if(bounds == null) return false;
+		if(transform != null) bounds = transform.createTransformedShape(bounds).getBounds2D();
+		if(!rasterizer.isVisible(bounds, path.getStyle(), flattener.getView(), path.getMatrix())) return false;
+		double[] matrix = multiply(flattener.getView(), path.getMatrix());
+		rasterizer.begin(path.getStyle(), matrix == null ? 1 : getScale(matrix));
+		draw(flattener, path, sink);
+		rasterizer.end();
+		return true;
+	}
+	
+	
+	/**
+	 * An interface for receiving flattened paths as polylines, one call per subpath.
+	 * 
+	 * Arrays are buffers of the caller and they are reused for the next polyline, so they are valid only during the call and must not be modified.
+	 */
+	public interface PolylineSink {
+		/**
+		 * Receives one polyline.
+		 * 
+		 * @param xs The x-coordinates of vertices
+		 * @param ys The y-coordinates of vertices
+		 * @param count The number of vertices, the arrays may be longer
+		 * @param closed Whether the polyline is closed, so the last vertex is connected with the first one
+		 */
+		public void polyline(double[] xs, double[] ys, int count, boolean closed);
+	}
+	
+	
+	/**
+	 * An interface for receiving paths read by SVG.stream().
+	 */
+	public interface PathListener {
+		/**
+		 * Receives one path, when its element is closed.
+		 * 
+		 * @param path The path with its transform composed from all enclosing groups
+		 */
+		public void path(Path path);
 	}
 	
 	
 	/**
 	 * An interface for defining a method to draw a line between two points.
+	 * 
+	 * It's an adapter on top of PolylineSink, which splits every polyline into lines. Methods taking a PolylineSink are named drawPolylines(),
+	 * so a lambda with four parameters passed to draw() or drawWithTolerance() is always a DrawLineMethod and needs no cast.
 	 */
-	public interface DrawLineMethod {
+	public interface DrawLineMethod extends PolylineSink {
 		public void drawLine(double x1, double y1, double x2, double y2);
+		public default void polyline(double[] xs, double[] ys, int count, boolean closed) {
+			for(int i = 0;i < count - 1;i++) drawLine(xs[i], ys[i], xs[i + 1], ys[i + 1]);
+			if(closed) drawLine(xs[count - 1], ys[count - 1], xs[0], ys[0]);
+		}
 	}
 	
 	
@@ -845,10 +2418,7 @@ public class SVG {
 		
 		SVG aaa = new SVG(new File("C:\\Users\\MSZ\\Desktop\\nebula.svg"));
 		Window window = new Window();
-		aaa.draw(20, (x1, y1, x2, y2) -> {
-			//System.out.println(String.format("%.2f, %.2f  ->  %.2f, %.2f", x1, y1, x2, y2));
-			window.drawLine((int)Math.round(x1), (int)Math.round(y1), (int)Math.round(x2), (int)Math.round(y2));
-		});
+		window.draw(aaa, 0.25, null);
 		
 	}
 
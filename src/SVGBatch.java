@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+
+/**
+ * Loads many SVG files concurrently, e.g. for converting or thumbnailing whole directories.
+ *
+ * Every file is handled by its own task: the file is read, parsed and passed to the consumer. Tasks run on virtual threads,
+ * if the running Java has them, otherwise on a pool of platform threads. Reading only waits for the disk, so many files are read
+ * at once, but parsing is limited to parallelism files at a time, by default one per processor. The number of files loaded
+ * and waiting is limited too, so memory doesn't grow with the size of the directory.
+ *
+ * A file, which can't be read or parsed, or whose consumer throws an exception, doesn't stop the batch. It's reported in the result with its error.
+ * Errors, like OutOfMemoryError, aren't failures of a file: they stop the batch and run() throws them.
+ */
+public final class SVGBatch {
+
+
+	// Files read, parsed or consumed at the same time, per permit of parsing
+	private static final int IN_FLIGHT_PER_PARSER = 4;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private SVG.ParseOptions parseOptions = new SVG.ParseOptions();
+
+
+	/**
+	 * Loads all files of the directory matching the glob and passes them to the consumer, using default settings.
+	 *
+	 * @param directory The directory, its subdirectories aren't searched
+	 * @param glob The pattern of file names, e.g. "*.svg"
+	 * @param consumer The consumer of loaded documents, called concurrently from many threads
+	 * @return The statistics of the batch with failures of single files
+	 * @throws IOException If the directory can't be listed
+	 * @see #run(Path, String, BiConsumer)
+	 */
+	public static Result process(Path directory, String glob, Consumer<SVG> consumer) throws IOException {
+		return new SVGBatch().run(directory, glob, (file, svg) -> consumer.accept(svg));
+	}
+
+
+	/**
+	 * Sets the maximum number of files parsed at the same time.
+	 *
+	 * @param parallelism The number of parsers, at least 1
+	 * @return This batch
+	 */
+	public SVGBatch setParallelism(int parallelism) {
+		if(parallelism < 1) throw new IllegalArgumentException("At least one parser is needed, not " + parallelism);
+		this.parallelism = parallelism;
+		return this;
+	}
+
+
+	/**
+	 * Sets options of parsing every file. A pool of the options parses paths of one large file in parallel, on top of the parallelism of the batch.
+	 *
+	 * @param parseOptions The parse options
+	 * @return This batch
+	 */
+	public SVGBatch setParseOptions(SVG.ParseOptions parseOptions) {
+		this.parseOptions = parseOptions;
+		return this;
+	}
+
+
+	public int getParallelism() {return parallelism;}
+	public SVG.ParseOptions getParseOptions() {return parseOptions;}
+
+
+	/**
+	 * Loads all files of the directory matching the glob and passes them to the consumer with their paths.
+	 * Returns after all files have been consumed.
+	 *
+	 * @param directory The directory, its subdirectories aren't searched
+	 * @param glob The pattern of file names, e.g. "*.svg", see FileSystem.getPathMatcher()
+	 * @param consumer The consumer of files and their documents, called concurrently from many threads, so it must be thread safe
+	 * @return The statistics of the batch with failures of single files
+	 * @throws IOException If the directory can't be listed
+	 * @throws CancellationException If the calling thread is interrupted, files being processed are interrupted too
+	 * @throws Error The first error thrown while processing a file, other than StackOverflowError, e.g. OutOfMemoryError
+	 */
+	public Result run(Path directory, String glob, BiConsumer<Path, SVG> consumer) throws IOException {
+		Semaphore parsing = new Semaphore(parallelism);
+		Semaphore inFlight = new Semaphore(parallelism * IN_FLIGHT_PER_PARSER);
+		AtomicLong files = new AtomicLong(), bytes = new AtomicLong();
+		List<Failure> failures = Collections.synchronizedList(new ArrayList<Failure>());
+		AtomicReference<Error> error = new AtomicReference<Error>();
+		long start = System.nanoTime();
+
+		ExecutorService executor = newExecutor(parallelism * IN_FLIGHT_PER_PARSER);
+		try(DirectoryStream<Path> listing = Files.newDirectoryStream(directory, glob)) {
+			for(Path file : listing) {
+				if(!Files.isRegularFile(file)) continue;
+				inFlight.acquire();
+				if(error.get() != null) break;
+				executor.execute(() -> {
+					try {
+						byte[] content = Files.readAllBytes(file);
+						bytes.addAndGet(content.length);
+						SVG svg;
+						parsing.acquire();
+						try {svg = new SVG(ByteBuffer.wrap(content), parseOptions);}
+						finally {parsing.release();}
+						consumer.accept(file, svg);
+					}
+					catch(InterruptedException e) {
+						failures.add(new Failure(file, e));
+						Thread.currentThread().interrupt();
+					}
+					// Exceptions of a single file and too deeply nested documents are failures of the file, not of the batch
+					catch(Exception | StackOverflowError e) {
+						failures.add(new Failure(file, e));
+					}
+					// Other errors, e.g. OutOfMemoryError, mean the JVM is broken, so the batch is stopped and run() throws the first one
+					catch(Error e) {
+						error.compareAndSet(null, e);
+						throw e;
+					}
+					finally {
+						files.incrementAndGet();
+						inFlight.release();
+					}
+				});
+			}
+			// After an error, files being processed are interrupted
+			if(error.get() != null) executor.shutdownNow();
+			else executor.shutdown();
+			while(!executor.awaitTermination(1, TimeUnit.SECONDS));
+		}
+		catch(InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while processing " + directory);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		if(error.get() != null) throw error.get();
+		return new Result(files.get(), bytes.get(), System.nanoTime() - start, new ArrayList<Failure>(failures));
+	}
+
+
+	// Executor starting a virtual thread per task, if virtual threads are available, or a fixed pool of platform threads
+	private static ExecutorService newExecutor(int threads) {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(threads, task -> {
+				Thread thread = new Thread(task, "SVGBatch");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+
+	/**
+	 * Represents statistics of a finished batch.
+	 */
+	public static class Result {
+		private final long files, bytes, nanos;
+		private final List<Failure> failures;
+		Result(long files, long bytes, long nanos, List<Failure> failures) {
+			this.files = files;
+			this.bytes = bytes;
+			this.nanos = nanos;
+			this.failures = Collections.unmodifiableList(failures);
+		}
+		public long getFiles() {return files;}
+		public long getBytes() {return bytes;}
+		public long getNanos() {return nanos;}
+		public List<Failure> getFailures() {return failures;}
+		public double getFilesPerSecond() {return nanos == 0 ? 0 : files * 1e9 / nanos;}
+		public double getMegabytesPerSecond() {return nanos == 0 ? 0 : bytes * 1e9 / nanos / (1 << 20);}
+		@Override
+		public String toString() {
+			return String.format("%d files, %d failed, %.1f files/s, %.1f MB/s", files, failures.size(), getFilesPerSecond(), getMegabytesPerSecond());
+		}
+	}
+
+
+	/**
+	 * Represents a file, which couldn't be loaded or consumed, with the error.
+	 */
+	public static class Failure {
+		private final Path file;
+		private final Throwable error;
+		Failure(Path file, Throwable error) {
+			this.file = file;
+			this.error = error;
+		}
+		public Path getFile() {return file;}
+		public Throwable getError() {return error;}
+		@Override
+		public String toString() {
+			return file + ": " + error;
+		}
+	}
+
+
+}
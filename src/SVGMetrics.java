@@ -0,0 +1,233 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * Collects where time goes while SVG documents are loaded and drawn.
+ *
+ * Metrics are optional: they're collected only for documents parsed with ParseOptions.setMetrics() or given one by SVG.setMetrics().
+ * Without metrics nothing is measured, not even the time. One instance may be shared by many documents and threads,
+ * so it can be left on in production and read periodically. Parsing reports time of every phase and the number of commands
+ * of every letter, drawing reports the number of drawn paths, polylines and line segments.
+ *
+ * Independently of metrics, parsing and drawing emit Flight Recorder events svgl.Parse and svgl.Draw, one per document and call,
+ * so single pathological files can be found in a recording. Events cost nothing while they aren't recorded.
+ */
+public final class SVGMetrics {
+
+
+	private final LongAdder documents = new LongAdder();
+	private final LongAdder readNanos = new LongAdder(), tagNanos = new LongAdder(), transformNanos = new LongAdder();
+	private final LongAdder attributeNanos = new LongAdder(), pathDataNanos = new LongAdder();
+
+	// Commands parsed of every letter, indexed by the letter
+	private final AtomicLongArray commands = new AtomicLongArray(128);
+
+	private final LongAdder draws = new LongAdder(), drawNanos = new LongAdder();
+	private final LongAdder drawnPaths = new LongAdder(), drawnPolylines = new LongAdder(), drawnSegments = new LongAdder();
+
+
+	// GETTERS
+
+	/**
+	 * Returns the number of parsed documents.
+	 */
+	public long getDocuments() {return documents.sum();}
+
+	/**
+	 * Returns the time of reading files or streams and decoding them, in nanoseconds, summed over all documents.
+	 */
+	public long getReadNanos() {return readNanos.sum();}
+
+	/**
+	 * Returns the time of finding tags and reading attributes of the root svg tag, in nanoseconds.
+	 */
+	public long getTagNanos() {return tagNanos.sum();}
+
+	/**
+	 * Returns the time of building groups and resolving transforms of groups and paths, in nanoseconds.
+	 */
+	public long getTransformNanos() {return transformNanos.sum();}
+
+	/**
+	 * Returns the time of extracting type, style, id and path data attributes, in nanoseconds. With a pool it's summed over its threads.
+	 */
+	public long getAttributeNanos() {return attributeNanos.sum();}
+
+	/**
+	 * Returns the time of parsing path data into commands, in nanoseconds. With a pool it's summed over its threads.
+	 * Lazily parsed paths aren't measured, they're parsed on first use.
+	 */
+	public long getPathDataNanos() {return pathDataNanos.sum();}
+
+	/**
+	 * Returns the number of parsed commands with the letter, e.g. 'C' or 'c'. Lazily parsed paths aren't counted.
+	 */
+	public long getCommandCount(char letter) {return letter < 128 ? commands.get(letter) : 0;}
+
+	/**
+	 * Returns the number of calls of draw(), drawWithTolerance(), drawPolylines(), drawParallel() and render().
+	 */
+	public long getDraws() {return draws.sum();}
+
+	/**
+	 * Returns the time spent in draw(), drawWithTolerance(), drawPolylines(), drawParallel() and render(), including the time of sinks, in nanoseconds.
+	 */
+	public long getDrawNanos() {return drawNanos.sum();}
+
+	public long getDrawnPaths() {return drawnPaths.sum();}
+	public long getDrawnPolylines() {return drawnPolylines.sum();}
+
+	/**
+	 * Returns the number of line segments passed to sinks. A polyline of n points has n - 1 segments, one more if it's closed.
+	 */
+	public long getDrawnSegments() {return drawnSegments.sum();}
+
+
+	/**
+	 * Sets all metrics to zero.
+	 */
+	public void reset() {
+		for(LongAdder adder : new LongAdder[] {documents, readNanos, tagNanos, transformNanos, attributeNanos, pathDataNanos, draws, drawNanos, drawnPaths, drawnPolylines, drawnSegments}) adder.reset();
+		for(int x = 0;x < commands.length();x++) commands.set(x, 0);
+	}
+
+
+	@Override
+	public String toString() {
+		StringBuilder letters = new StringBuilder();
+		for(char letter = 'A';letter <= 'z';letter++) {
+			long count = getCommandCount(letter);
+			if(count > 0) letters.append(letters.length() == 0 ? "" : " ").append(letter).append('=').append(count);
+		}
+		return String.format("%d documents: read %.3f ms, tags %.3f ms, transforms %.3f ms, attributes %.3f ms, path data %.3f ms; commands %s; "
+				+ "%d draws %.3f ms: %d paths, %d polylines, %d segments",
+				getDocuments(), getReadNanos() / 1e6, getTagNanos() / 1e6, getTransformNanos() / 1e6, getAttributeNanos() / 1e6, getPathDataNanos() / 1e6,
+				letters.length() == 0 ? "none" : letters, getDraws(), getDrawNanos() / 1e6, getDrawnPaths(), getDrawnPolylines(), getDrawnSegments());
+	}
+
+
+	// RECORDING
+
+	void addRead(long nanos) {readNanos.add(nanos);}
+	void addTags(long nanos) {tagNanos.add(nanos);}
+	void addTransforms(long nanos) {transformNanos.add(nanos);}
+
+	void addPaths(long attributeNanos, long pathDataNanos, long[] commands) {
+		this.attributeNanos.add(attributeNanos);
+		this.pathDataNanos.add(pathDataNanos);
+		for(int x = 0;x < commands.length;x++) if(commands[x] != 0) this.commands.addAndGet(x, commands[x]);
+	}
+
+	void addDocument() {documents.increment();}
+
+
+	/**
+	 * Starts measuring a draw call, if there are metrics or the draw event is recorded.
+	 *
+	 * @param metrics The metrics of the document or null
+	 * @param sink The sink of the call
+	 * @return A counter wrapping the sink, which has to be finished, or the sink itself if nothing is measured
+	 */
+	static SVG.PolylineSink startDraw(SVGMetrics metrics, SVG.PolylineSink sink) {
+		if(metrics == null && !DrawEvent.PROBE.isEnabled()) return sink;
+		return new DrawCounter(metrics, sink);
+	}
+
+
+	/**
+	 * Finishes measuring a draw call started by startDraw().
+	 *
+	 * @param sink The sink returned by startDraw()
+	 * @param paths The number of drawn paths
+	 */
+	static void finishDraw(SVG.PolylineSink sink, int paths) {
+		if(sink instanceof DrawCounter) ((DrawCounter)sink).finish(paths);
+	}
+
+
+	// Counts polylines and segments passed to the wrapped sink
+	private static final class DrawCounter implements SVG.PolylineSink {
+		private final SVGMetrics metrics;
+		private final SVG.PolylineSink sink;
+		private final DrawEvent event = new DrawEvent();
+		private final long start = System.nanoTime();
+		private long polylines, segments;
+		DrawCounter(SVGMetrics metrics, SVG.PolylineSink sink) {
+			this.metrics = metrics;
+			this.sink = sink;
+			event.begin();
+		}
+		@Override
+		public void polyline(double[] xs, double[] ys, int count, boolean closed) {
+			polylines++;
+			segments += Math.max(0, count - 1) + (closed && count > 1 ? 1 : 0);
+			sink.polyline(xs, ys, count, closed);
+		}
+		void finish(int paths) {
+			event.end();
+			if(metrics != null) {
+				metrics.draws.increment();
+				metrics.drawNanos.add(System.nanoTime() - start);
+				metrics.drawnPaths.add(paths);
+				metrics.drawnPolylines.add(polylines);
+				metrics.drawnSegments.add(segments);
+			}
+			if(event.shouldCommit()) {
+				event.paths = paths;
+				event.polylines = polylines;
+				event.segments = segments;
+				event.commit();
+			}
+		}
+	}
+
+
+	/**
+	 * Flight Recorder event of parsing one document.
+	 */
+	@Name("svgl.Parse")
+	@Label("SVG Parse")
+	@Category("SVGL")
+	@Description("Parsing of one SVG document")
+	static final class ParseEvent extends Event {
+		@Label("Document Length")
+		@Description("Characters of decoded documents, bytes of lazily parsed ones")
+		int length;
+		@Label("Tags")
+		int tags;
+		@Label("Groups")
+		int groups;
+		@Label("Paths")
+		int paths;
+		@Label("Lazy")
+		boolean lazy;
+	}
+
+
+	/**
+	 * Flight Recorder event of one draw call.
+	 */
+	@Name("svgl.Draw")
+	@Label("SVG Draw")
+	@Category("SVGL")
+	@Description("One call drawing paths of an SVG document")
+	static final class DrawEvent extends Event {
+		// Instance asked whether the event is recorded, so no event is created when it isn't
+		static final DrawEvent PROBE = new DrawEvent();
+		@Label("Paths")
+		int paths;
+		@Label("Polylines")
+		long polylines;
+		@Label("Segments")
+		long segments;
+	}
+
+
+}
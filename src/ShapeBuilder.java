@@ -0,0 +1,106 @@
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+
+
+/**
+ * Converts a path into a Java2D shape without flattening it.
+ *
+ * Lines and Bezier curves become segments of a Path2D directly. Arcs are converted to cubic Bezier curves,
+ * one per at most a quarter of the ellipse, which is the usual exact enough approximation used by Java2D itself.
+ * The transform of the path is applied to the finished shape, curves stay curves under affine transforms.
+ */
+final class ShapeBuilder extends PathWalker {
+
+
+	private final double[] center = new double[6];
+	private Path2D.Double shape;
+
+
+	/**
+	 * Builds the shape of the path.
+	 *
+	 * @param path The path
+	 * @return A new shape in coordinates of the document, filled with the nonzero winding rule like the path
+	 */
+	Path2D.Double build(SVG.Path path) {
+		shape = new Path2D.Double(Path2D.WIND_NON_ZERO, path.getCoordinates().length / 2 + 2);
+		walk(path);
+		double[] matrix = path.getMatrix();
+		if(matrix != null) shape.transform(new AffineTransform(matrix));
+		Path2D.Double result = shape;
+		shape = null;
+		return result;
+	}
+
+
+	@Override
+	void moveTo(double x, double y) {
+		shape.moveTo(x, y);
+	}
+
+
+	@Override
+	void lineTo(double x, double y) {
+		start();
+		shape.lineTo(x, y);
+	}
+
+
+	@Override
+	void quadTo(double x1, double y1, double x2, double y2) {
+		start();
+		shape.quadTo(x1, y1, x2, y2);
+	}
+
+
+	@Override
+	void curveTo(double x1, double y1, double x2, double y2, double x3, double y3) {
+		start();
+		shape.curveTo(x1, y1, x2, y2, x3, y3);
+	}
+
+
+	@Override
+	void arcTo(double rx, double ry, double phi, boolean large, boolean sweep, double x, double y) {
+		start();
+		SVG.getArcCenter(x0, y0, rx, ry, phi, large, sweep, x, y, center);
+		double cosPhi = Math.cos(Math.toRadians(phi));
+		double sinPhi = Math.sin(Math.toRadians(phi));
+		// Point of the ellipse is C + u cos t + v sin t, its derivative is v cos t - u sin t
+		double ux = center[2] * cosPhi, uy = center[2] * sinPhi;
+		double vx = -center[3] * sinPhi, vy = center[3] * cosPhi;
+		int segments = Math.max(1, (int)Math.ceil(Math.abs(center[5]) / (Math.PI / 2) - 1e-9));
+		double step = center[5] / segments;
+		// Distance of control points from endpoints along tangents, relative to the derivative
+		double k = 4.0 / 3 * Math.tan(step / 4);
+		double t = center[4];
+		double cos = Math.cos(t), sin = Math.sin(t);
+		double sx = x0, sy = y0;
+		for(int i = 1;i <= segments;i++) {
+			double nextCos = Math.cos(t + step * i), nextSin = Math.sin(t + step * i);
+			double ex = i == segments ? x : center[0] + ux * nextCos + vx * nextSin;
+			double ey = i == segments ? y : center[1] + uy * nextCos + vy * nextSin;
+			shape.curveTo(sx + k * (vx * cos - ux * sin), sy + k * (vy * cos - uy * sin),
+					ex - k * (vx * nextCos - ux * nextSin), ey - k * (vy * nextCos - uy * nextSin), ex, ey);
+			sx = ex;
+			sy = ey;
+			cos = nextCos;
+			sin = nextSin;
+		}
+	}
+
+
+	@Override
+	void closePath() {
+		start();
+		shape.closePath();
+	}
+
+
+	// Path2D needs a move first, a path may start with any command at the origin
+	private void start() {
+		if(shape.getCurrentPoint() == null) shape.moveTo(x0, y0);
+	}
+
+
+}
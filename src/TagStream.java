@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.io.Reader;
+
+
+/**
+ * Reads tags of a document one by one from a reader, keeping only the tag being read in memory.
+ *
+ * Text between tags, comments, CDATA sections, processing instructions and declarations like <!DOCTYPE ...> are skipped.
+ * Every tag is returned as its text between '<' and '>', e.g. "path d=\"M0 0\"/" or "/g", so a tag may span any number of reads
+ * from the reader and quoted attribute values may contain '>'.
+ */
+final class TagStream {
+
+
+	private final Reader reader;
+	private final char[] buffer = new char[8192];
+	private int position, limit;
+	private final StringBuilder tag = new StringBuilder(256);
+
+
+	/**
+	 * Creates a stream of tags of the document read from the reader. The reader is read to its end, but not closed.
+	 *
+	 * @param reader The reader of the document
+	 */
+	TagStream(Reader reader) {
+		this.reader = reader;
+	}
+
+
+	/**
+	 * Reads the next start, end or empty element tag.
+	 *
+	 * @return The text of the tag between '<' and '>', or null at the end of the document
+	 * @throws IOException If the reader fails
+	 */
+	String next() throws IOException {
+		while(true) {
+			int c;
+			do c = read(); while(c >= 0 && c != '<');
+			if(c < 0) return null;
+			c = read();
+			if(c < 0) return null;
+
+			if(c == '?') skipPast("?>");
+			else if(c == '!') {
+				c = read();
+				if(c == '-') {
+					// A comment starts with exactly "<!--", its end is searched from there, so "<!---->" is a whole comment
+					c = read();
+					if(c == '-') skipPast("-->");
+					else skipDeclaration(c);
+				}
+				else if(c == '[') skipPast("]]>");
+				else skipDeclaration(c);
+			}
+			else {
+				// A tag ends with '>' outside of quoted attribute values
+				tag.setLength(0);
+				char quote = 0;
+				while(c >= 0 && (c != '>' || quote != 0)) {
+					if(quote == 0 && (c == '"' || c == '\'')) quote = (char)c;
+					else if(c == quote) quote = 0;
+					tag.append((char)c);
+					c = read();
+				}
+				return tag.toString();
+			}
+		}
+	}
+
+
+	// Skips characters up to the end of the terminator
+	private void skipPast(String terminator) throws IOException {
+		int length = terminator.length();
+		char[] window = new char[length];
+		for(int c = read();c >= 0;c = read()) {
+			System.arraycopy(window, 1, window, 0, length - 1);
+			window[length - 1] = (char)c;
+			if(matches(window, terminator)) return;
+		}
+	}
+
+
+	private static boolean matches(char[] window, String terminator) {
+		for(int x = 0;x < window.length;x++) if(window[x] != terminator.charAt(x)) return false;
+		return true;
+	}
+
+
+	// Skips a <!...> declaration, which may contain an internal subset in square brackets like <!DOCTYPE svg [ ... ]>
+	private void skipDeclaration(int c) throws IOException {
+		int depth = 0;
+		for(;c >= 0;c = read()) {
+			if(c == '[') depth++;
+			else if(c == ']') depth--;
+			else if(c == '>' && depth <= 0) return;
+		}
+	}
+
+
+	private int read() throws IOException {
+		if(position == limit) {
+			limit = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if(limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[position++];
+	}
+
+
+}
@@ -7,10 +7,13 @@ import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
 
 // THIS IS AN EXAMPLE USE OF THE SVGL
@@ -21,8 +24,20 @@ public class Window extends JFrame {
 
 	private static final long serialVersionUID = 1L;
 	
-	private BufferedImage image;
+	// Repaints are requested at most once per frame, after something was drawn
+	private static final int FRAME_MILLIS = 16;
+	
+	// Shown image, used only by the event dispatch thread after the window is created
+	private volatile BufferedImage image;
+	
+	// Image drawn into and its graphics, guarded by drawing. Drawing holds the lock for the whole render, but the event dispatch thread
+	// only tries it to copy the image to the shown one, so painting and resizing never wait for a render.
+	private final ReentrantLock drawing = new ReentrantLock();
+	private BufferedImage back;
+	private Graphics2D graphics;
+	
 	private JPanel content;
+	private volatile boolean dirty, resized;
 	
 
 	public Window() {
@@ -32,6 +47,7 @@ public class Window extends JFrame {
 		setLocationRelativeTo(null);
 		setVisible(true);
 		image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
+		setBack(new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB));
 		content = new JPanel() {
 			private static final long serialVersionUID = 1L;
 			public void paint(Graphics g) {
@@ -44,10 +60,8 @@ public class Window extends JFrame {
 		
 		addComponentListener(new ComponentAdapter() {
 			public void componentResized(ComponentEvent e) {
-				BufferedImage i = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
-				if(image != null) i.getGraphics().drawImage(image, 0, 0, null);
-				image = i;
-				getContentPane().repaint();
+				resized = true;
+				publish();
 			}
 		});
 		addWindowListener(new WindowAdapter() {
@@ -56,27 +70,86 @@ public class Window extends JFrame {
 				System.exit(0);
 			}
 		});
+		new Timer(FRAME_MILLIS, e -> publish()).start();
 	}
 	
 	
 	public void drawLine(int x1, int y1, int x2, int y2) {
-		Graphics2D g = (Graphics2D)image.getGraphics();
-		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-		g.setColor(Color.black);
-		g.setStroke(new BasicStroke(1, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-		g.drawLine(x1, y1, x2, y2);
-		content.repaint();
+		drawing.lock();
+		try {graphics.drawLine(x1, y1, x2, y2);}
+		finally {drawing.unlock();}
+		dirty = true;
+	}
+	
+	
+	/**
+	 * Draws outlines of all paths of the SVG, one shape per path, and repaints the window once.
+	 * The SVG is drawn into the back image, the window shows it on the first frame after drawing has finished.
+	 * 
+	 * @param svg The SVG to be drawn
+	 * @param tolerance The maximum distance between drawn lines and the real curves, in pixels
+	 * @param view The transform from coordinates of the document to pixels or null for identity
+	 */
+	public void draw(SVG svg, double tolerance, AffineTransform view) {
+		drawing.lock();
+		try {new Java2DRenderer(graphics, null, Color.black).render(svg, tolerance, view);}
+		finally {drawing.unlock();}
+		dirty = true;
 	}
 	
 
 	public void clear() {
-		Graphics2D g = (Graphics2D)image.getGraphics();
-		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-		g.setColor(Color.white);
-		g.fillRect(0, 0, getWidth(), getHeight());
-		getContentPane().repaint();
+		drawing.lock();
+		try {
+			graphics.setColor(Color.white);
+			graphics.fillRect(0, 0, back.getWidth(), back.getHeight());
+			graphics.setColor(Color.black);
+		}
+		finally {drawing.unlock();}
+		dirty = true;
+	}
+	
+	
+	// Called on the event dispatch thread. Copies the back image to the shown one and repaints, unless a render holds the back image,
+	// then the next frame tries again. The lock is held only for resizing and copying, never for drawing.
+	private void publish() {
+		if(!dirty && !resized) return;
+		if(!drawing.tryLock()) return;
+		try {
+			if(resized) {
+				resized = false;
+				image = resize(image);
+				setBack(resize(back));
+			}
+			if(dirty) {
+				dirty = false;
+				back.copyData(image.getRaster());
+			}
+		}
+		finally {drawing.unlock();}
+		content.repaint();
+	}
+	
+	
+	// Returns a copy of the image with the size of the window
+	private BufferedImage resize(BufferedImage image) {
+		BufferedImage resized = new BufferedImage(Math.max(1, getWidth()), Math.max(1, getHeight()), BufferedImage.TYPE_INT_ARGB);
+		Graphics g = resized.getGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return resized;
+	}
+	
+	
+	// Replaces the back image and creates the graphics drawing into it, configured once for all drawing
+	private void setBack(BufferedImage back) {
+		if(graphics != null) graphics.dispose();
+		this.back = back;
+		graphics = back.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		graphics.setColor(Color.black);
+		graphics.setStroke(new BasicStroke(1, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
 	}
 	
 	
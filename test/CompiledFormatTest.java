@@ -0,0 +1,83 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Compiled files give back the document they were written from, and damaged files fail with I/O exceptions only.
+ */
+class CompiledFormatTest {
+
+
+	private static final String DOCUMENT = TestDocuments.generate(2, 500);
+
+	@TempDir
+	Path directory;
+
+
+	@Test
+	void compiledDocumentEqualsParsedDocument() throws IOException {
+		SVG parsed = TestDocuments.parse(DOCUMENT, new SVG.ParseOptions());
+		Path file = directory.resolve("document.svgc");
+		try(OutputStream out = Files.newOutputStream(file)) {parsed.writeCompiled(out);}
+		SVG compiled = SVG.openCompiled(file);
+		TestDocuments.assertSamePaths(parsed.getPaths(), compiled.getPaths());
+		assertEquals(parsed.getWidth(), compiled.getWidth());
+		assertEquals(parsed.getHeight(), compiled.getHeight());
+		assertEquals(parsed.getViewBox().getX2(), compiled.getViewBox().getX2());
+		assertEquals(parsed.getVersion(), compiled.getVersion());
+		assertEquals(parsed.getId(), compiled.getId());
+		assertEquals(parsed.getBounds(), compiled.getBounds());
+		assertEquals(TestDocuments.polylines(parsed, 0.5), TestDocuments.polylines(compiled, 0.5));
+	}
+
+
+	@Test
+	void documentIsNotACompiledFile() throws IOException {
+		Path file = directory.resolve("document.svg");
+		Files.writeString(file, DOCUMENT);
+		assertThrows(IOException.class, () -> SVG.openCompiled(file));
+	}
+
+
+	@Test
+	void damagedFilesFailWithIOExceptions() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TestDocuments.parse(TestDocuments.generate(3, 50), new SVG.ParseOptions()).writeCompiled(out);
+		byte[] bytes = out.toByteArray();
+		Random random = new Random(3);
+		Path file = directory.resolve("damaged.svgc");
+		for(int x = 0;x < 300;x++) {
+			byte[] damaged = x < 100 ? Arrays.copyOf(bytes, random.nextInt(bytes.length)) : bytes.clone();
+			if(x >= 100) for(int i = 0;i < 4;i++) damaged[random.nextInt(damaged.length)] = (byte)random.nextInt();
+			Files.write(file, damaged);
+			openAndUse(file);
+		}
+	}
+
+
+	// Opens the file and reads every path, an IOException or UncheckedIOException are the only expected failures
+	private static void openAndUse(Path file) {
+		SVG svg;
+		try {svg = SVG.openCompiled(file);}
+		catch(IOException e) {return;}
+		try {
+			for(SVG.Path path : svg.getPaths()) for(int c = 0;c < path.getCommandCount();c++) path.getPointCount(c);
+			svg.getBounds();
+		}
+		catch(UncheckedIOException e) {}
+	}
+
+
+}
@@ -0,0 +1,113 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Edited documents draw and query like documents parsed with the edits, and the flattening cache never returns polylines of old data.
+ */
+class EditTest {
+
+
+	@Test
+	void cacheIsReusedUntilAPathChanges() {
+		String document = TestDocuments.generate(4, 200);
+		SVG svg = TestDocuments.parse(document, new SVG.ParseOptions());
+		FlatteningCache cache = new FlatteningCache(1 << 24);
+		svg.setFlatteningCache(cache);
+		String first = TestDocuments.polylines(svg, 0.5);
+		assertEquals(200, cache.getMisses());
+		assertEquals(first, TestDocuments.polylines(svg, 0.5));
+		assertEquals(200, cache.getHits());
+
+		svg.getPaths()[7].setPathData("M1 2L3 4");
+		String edited = TestDocuments.polylines(svg, 0.5);
+		assertEquals(201, cache.getMisses());
+		assertNotEquals(first, edited);
+		SVG uncached = TestDocuments.parse(document, new SVG.ParseOptions());
+		uncached.getPaths()[7].setPathData("M1 2L3 4");
+		assertEquals(TestDocuments.polylines(uncached, 0.5), edited);
+		assertEquals(uncached.getPaths()[7].getBounds(), svg.getPaths()[7].getBounds());
+	}
+
+
+	@Test
+	void editsKeepOrderAndQueries() {
+		SVG svg = TestDocuments.parse(rectangles(new Random(5), 300), new SVG.ParseOptions());
+		ArrayList<SVG.Path> expected = new ArrayList<SVG.Path>(Arrays.asList(svg.getPaths()));
+		Random random = new Random(5);
+		for(int x = 0;x < 2000;x++) {
+			if(random.nextBoolean() && !expected.isEmpty()) {
+				SVG.Path path = expected.remove(random.nextInt(expected.size()));
+				assertTrue(svg.removePath(path));
+				assertFalse(svg.removePath(path));
+			}
+			else {
+				int position = random.nextInt(expected.size() + 1);
+				SVG.Path next = position == expected.size() ? null : expected.get(position);
+				expected.add(position, svg.insertPath(next, null, null, rectangle(random)));
+			}
+			if(x % 100 == 0) {
+				assertArrayEquals(expected.toArray(), svg.getPaths());
+				for(int q = 0;q < 20;q++) {
+					Rectangle2D query = new Rectangle2D.Double(random.nextInt(1000) + 0.5, random.nextInt(1000) + 0.5, 1 + random.nextInt(200), 1 + random.nextInt(200));
+					assertArrayEquals(QueryTest.intersecting(expected, query), svg.pathsIn(query));
+				}
+			}
+		}
+		assertArrayEquals(expected.toArray(), svg.getPaths());
+	}
+
+
+	@Test
+	void insertedPathsBelongToTheirGroup() {
+		SVG svg = TestDocuments.parse("<svg><g transform=\"translate(10 0)\"><path d=\"M0 0h1\"/><path d=\"M0 2h1\"/></g></svg>", new SVG.ParseOptions());
+		SVG.Group group = svg.getGroups()[0];
+		SVG.Path second = svg.getPaths()[1];
+		SVG.Path inserted = svg.insertPath(second, group, "fill:none", "M0 1h1");
+		assertArrayEquals(new SVG.Path[] {svg.getPaths()[0], inserted, second}, group.getPaths().toArray());
+		assertEquals(new Rectangle2D.Double(10, 1, 1, 0), inserted.getBounds());
+		assertTrue(svg.removePath(inserted));
+		assertEquals(2, group.getPaths().size());
+	}
+
+
+	@Test
+	void insertRejectsPathsAndGroupsOfOtherDocuments() {
+		String document = "<svg><g><path d=\"M0 0h1\"/></g></svg>";
+		SVG svg = TestDocuments.parse(document, new SVG.ParseOptions());
+		SVG other = TestDocuments.parse(document, new SVG.ParseOptions());
+		assertThrows(IllegalArgumentException.class, () -> svg.insertPath(other.getPaths()[0], null, null, "M0 0"));
+		assertThrows(IllegalArgumentException.class, () -> svg.insertPath(null, other.getGroups()[0], null, "M0 0"));
+		SVG.Path removed = svg.getPaths()[0];
+		svg.removePath(removed);
+		assertThrows(IllegalArgumentException.class, () -> svg.insertPath(removed, null, null, "M0 0"));
+		assertEquals(0, svg.getPaths().length);
+	}
+
+
+	// Returns a document of random axis aligned rectangles with integer corners
+	static String rectangles(Random random, int count) {
+		StringBuilder svg = new StringBuilder("<svg>");
+		for(int x = 0;x < count;x++) svg.append("<path d=\"").append(rectangle(random)).append("\"/>");
+		return svg.append("</svg>").toString();
+	}
+
+
+	static String rectangle(Random random) {
+		int width = 1 + random.nextInt(100);
+		return "M" + random.nextInt(1000) + " " + random.nextInt(1000) + "h" + width + "v" + (1 + random.nextInt(100)) + "h" + -width + "z";
+	}
+
+
+}
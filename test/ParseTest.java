@@ -0,0 +1,140 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Parsing modes give the same paths, the lexer follows the grammar of path data, groups compose transforms and bounds are exact.
+ */
+class ParseTest {
+
+
+	private static final String DOCUMENT = TestDocuments.generate(1, 2000);
+
+
+	@Test
+	void parallelParseEqualsSequentialParse() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			SVG sequential = TestDocuments.parse(DOCUMENT, new SVG.ParseOptions());
+			SVG parallel = TestDocuments.parse(DOCUMENT, new SVG.ParseOptions().setPool(pool).setParallelThreshold(0));
+			TestDocuments.assertSamePaths(sequential.getPaths(), parallel.getPaths());
+			assertEquals(TestDocuments.polylines(sequential, 0.5), TestDocuments.polylines(parallel, 0.5));
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+
+	@Test
+	void lazyParseEqualsEagerParse() {
+		SVG eager = TestDocuments.parse(DOCUMENT, new SVG.ParseOptions());
+		SVG lazy = TestDocuments.parse(DOCUMENT, new SVG.ParseOptions().setLazy(true));
+		SVG.Path[] paths = lazy.getPaths();
+		for(SVG.Path path : paths) assertFalse(path.isLoaded());
+		TestDocuments.assertSamePaths(eager.getPaths(), paths);
+		for(SVG.Path path : paths) assertTrue(path.isLoaded());
+		assertEquals(eager.getBounds(), TestDocuments.parse(DOCUMENT, new SVG.ParseOptions().setLazy(true)).getBounds());
+		assertEquals(TestDocuments.polylines(eager, 0.5), TestDocuments.polylines(lazy, 0.5));
+	}
+
+
+	@Test
+	void streamedPathsEqualParsedPaths() throws IOException {
+		String document = DOCUMENT.replace("</svg>", "<!----><!-- <g transform=\"scale(2)\"> --><path id=\"last\" d=\"M1 1h2\"></path></svg>");
+		SVG parsed = TestDocuments.parse(document, new SVG.ParseOptions());
+		ArrayList<SVG.Path> streamed = new ArrayList<SVG.Path>();
+		SVG svg = SVG.stream(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), streamed::add);
+		TestDocuments.assertSamePaths(parsed.getPaths(), streamed.toArray(new SVG.Path[0]));
+		assertEquals(parsed.getWidth(), svg.getWidth());
+		assertEquals(parsed.getId(), svg.getId());
+		assertNull(streamed.get(0).getGroup());
+	}
+
+
+	@Test
+	void lexerSplitsNumbersByTheGrammar() {
+		SVG.Path path = path("M1.5.5L-2e1 1E+1L10-5l.5.5.5.5");
+		assertCommand(path, 0, 'M', 1.5, 0.5);
+		assertCommand(path, 1, 'L', -20, 10);
+		assertCommand(path, 2, 'L', 10, -5);
+		assertEquals('l', path.getLetter(3));
+		double[] points = new double[path.getPointCount(3)];
+		for(int x = 0;x < points.length;x++) points[x] = path.getPoint(3, x);
+		assertArrayEquals(new double[] {0.5, 0.5, 0.5, 0.5}, points);
+	}
+
+
+	@Test
+	void lexerReadsPackedArcFlags() {
+		SVG.Path path = path("M0 0a5 5 0 105 5A5,5,30,0,1,20,0");
+		assertCommand(path, 1, 'a', 5, 5, 0, 1, 0, 5, 5);
+		assertCommand(path, 2, 'A', 5, 5, 30, 0, 1, 20, 0);
+	}
+
+
+	@Test
+	void lexerIgnoresNumbersBeforeTheFirstCommand() {
+		SVG.Path path = path("1 2 M3 4");
+		assertEquals(1, path.getCommandCount());
+		assertCommand(path, 0, 'M', 3, 4);
+	}
+
+
+	@Test
+	void groupTransformsAreComposed() {
+		SVG svg = TestDocuments.parse("<svg><g transform=\"translate(10 20)\"><g transform=\"scale(2)\"><path transform=\"translate(1 1)\" d=\"M0 0h1\"/></g></g></svg>", new SVG.ParseOptions());
+		SVG.Path path = svg.getPaths()[0];
+		AffineTransform expected = new AffineTransform(2, 0, 0, 2, 12, 22);
+		assertEquals(expected, path.getTransform());
+		assertEquals(svg.getGroups()[1], path.getGroup());
+		assertEquals(svg.getGroups()[0], path.getGroup().getParent());
+		assertEquals(new Rectangle2D.Double(12, 22, 2, 0), path.getBounds());
+	}
+
+
+	@Test
+	void boundsOfCurvesAreExact() {
+		assertBounds(0, 0, 10, 7.5, path("M0 0C0 10 10 10 10 0"));
+		assertBounds(0, 0, 10, 5, path("M0 0Q5 10 10 0"));
+		assertBounds(0, -5, 10, 0, path("M0 0A5 5 0 0 1 10 0"));
+		assertBounds(-5, -5, 5, 5, path("M-5 0A5 5 0 0 1 5 0A5 5 0 0 1 -5 0z"));
+	}
+
+
+	private static SVG.Path path(String pathData) {
+		return TestDocuments.parse("<svg><path d=\"" + pathData + "\"/></svg>", new SVG.ParseOptions()).getPaths()[0];
+	}
+
+
+	private static void assertBounds(double minX, double minY, double maxX, double maxY, SVG.Path path) {
+		Rectangle2D bounds = path.getBounds();
+		assertEquals(minX, bounds.getMinX(), 1e-9);
+		assertEquals(minY, bounds.getMinY(), 1e-9);
+		assertEquals(maxX, bounds.getMaxX(), 1e-9);
+		assertEquals(maxY, bounds.getMaxY(), 1e-9);
+	}
+	
+	
+	private static void assertCommand(SVG.Path path, int command, char letter, double... points) {
+		assertEquals(letter, path.getLetter(command));
+		double[] actual = new double[path.getPointCount(command)];
+		for(int x = 0;x < actual.length;x++) actual[x] = path.getPoint(command, x);
+		assertArrayEquals(points, actual);
+	}
+
+
+}
@@ -0,0 +1,76 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Queries through the spatial index find the same paths as tests of every path, in document order.
+ */
+class QueryTest {
+
+
+	private static final SVG RECTANGLES = TestDocuments.parse(EditTest.rectangles(new Random(6), 2000), new SVG.ParseOptions());
+
+
+	@Test
+	void pathsInEqualsTestOfEveryPath() {
+		List<SVG.Path> paths = Arrays.asList(RECTANGLES.getPaths());
+		Random random = new Random(6);
+		for(int x = 0;x < 500;x++) {
+			Rectangle2D query = new Rectangle2D.Double(random.nextInt(1100) - 50.5, random.nextInt(1100) - 50.5, 1 + random.nextInt(100), 1 + random.nextInt(100));
+			assertArrayEquals(intersecting(paths, query), RECTANGLES.pathsIn(query));
+		}
+	}
+
+
+	@Test
+	void pathsAtEqualsTestOfEveryPath() {
+		Random random = new Random(7);
+		for(int x = 0;x < 500;x++) {
+			double px = random.nextInt(1100) + 0.5, py = random.nextInt(1100) + 0.5;
+			ArrayList<SVG.Path> expected = new ArrayList<SVG.Path>();
+			for(SVG.Path path : RECTANGLES.getPaths()) if(path.getBounds().contains(px, py)) expected.add(path);
+			assertArrayEquals(expected.toArray(), RECTANGLES.pathsAt(px, py));
+		}
+	}
+
+
+	@Test
+	void pathsAtFindsOutlinesNearThePoint() {
+		SVG svg = TestDocuments.parse("<svg><path d=\"M0 0L100 0\"/><path d=\"M0 10L100 10\"/></svg>", new SVG.ParseOptions());
+		assertEquals(0, svg.pathsAt(50, 1).length);
+		assertArrayEquals(new SVG.Path[] {svg.getPaths()[0]}, svg.pathsAt(50, 1, 2));
+		assertArrayEquals(svg.getPaths(), svg.pathsAt(50, 5, 5));
+	}
+
+
+	@Test
+	void viewportDrawsOnlyPathsIntersectingIt() {
+		Random random = new Random(8);
+		for(int x = 0;x < 100;x++) {
+			Rectangle2D viewport = new Rectangle2D.Double(random.nextInt(1000) + 0.5, random.nextInt(1000) + 0.5, 1 + random.nextInt(300), 1 + random.nextInt(300));
+			int[] drawn = new int[1];
+			RECTANGLES.drawPolylines(viewport, 0.5, (xs, ys, count, closed) -> drawn[0]++);
+			int expected = 0;
+			for(SVG.Path path : RECTANGLES.getPaths()) if(path.getBounds().intersects(viewport)) expected++;
+			assertEquals(expected, drawn[0]);
+		}
+	}
+
+
+	// Returns paths of rectangles intersecting the query, tested one by one
+	static SVG.Path[] intersecting(List<SVG.Path> paths, Rectangle2D query) {
+		ArrayList<SVG.Path> found = new ArrayList<SVG.Path>();
+		for(SVG.Path path : paths) if(path.getBounds().intersects(query)) found.add(path);
+		return found.toArray(new SVG.Path[0]);
+	}
+
+
+}
@@ -0,0 +1,90 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.awt.geom.AffineTransform;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * The rasterizer covers pixels by the area of the path inside them and draws strokes as the options and styles say.
+ */
+class RenderTest {
+
+
+	private static final int SIZE = 16;
+
+
+	@Test
+	void edgesAreCoveredByArea() {
+		int[] argb = render("<path d=\"M2.5 2.5h10v10h-10z\"/>", null);
+		assertEquals(0xFF000000, argb[5 * SIZE + 5], "Inside");
+		assertEquals(0, argb[5 * SIZE + 14] >>> 24, "Outside");
+		assertAlpha(0x80, argb[5 * SIZE + 2], "Half covered edge");
+		assertAlpha(0x80, argb[12 * SIZE + 5], "Half covered bottom edge");
+		assertAlpha(0x40, argb[2 * SIZE + 2], "Quarter covered corner");
+	}
+
+
+	@Test
+	void fillRuleMakesHoles() {
+		String path = "<path d=\"M0 0h16v16h-16z M4 4h8v8h-8z\"/>";
+		assertEquals(0xFF000000, render(path, null)[8 * SIZE + 8]);
+		assertEquals(0, render(path, new SVG.RenderOptions().setEvenOdd(true))[8 * SIZE + 8]);
+		assertEquals(0, render(path.replace("/>", " style=\"fill-rule:evenodd\"/>"), null)[8 * SIZE + 8]);
+	}
+
+
+	@Test
+	void strokesFollowOptionsAndStyles() {
+		String line = "<path style=\"fill:none;stroke:#ff0000;stroke-width:4\" d=\"M2 8H14\"/>";
+		int[] argb = render(line, null);
+		assertEquals(0xFFFF0000, argb[7 * SIZE + 8]);
+		assertEquals(0xFFFF0000, argb[9 * SIZE + 8]);
+		assertEquals(0, argb[11 * SIZE + 8]);
+
+		// Width 0 of a style is no stroke, width 0 of the options draws hairlines
+		String hairline = "<path style=\"fill:none;stroke:#ff0000\" d=\"M2 8H14\"/>";
+		assertEquals(0, render(hairline.replace("#ff0000", "#ff0000;stroke-width:0"), new SVG.RenderOptions().setStrokeWidth(0))[8 * SIZE + 8]);
+		assertEquals(0xFFFF0000, render(hairline, new SVG.RenderOptions().setStrokeWidth(0))[8 * SIZE + 8]);
+	}
+
+
+	@Test
+	void hairlinesFarOutsideAreClipped() {
+		String line = "<path d=\"M-1e9 8L1e9 8\"/>";
+		SVG.RenderOptions options = new SVG.RenderOptions().setFillColor(0).setStrokeColor(0xFF0000FF).setStrokeWidth(0).setUseStyles(false);
+		int[] argb = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> render(line, options));
+		for(int x = 0;x < SIZE;x++) assertEquals(0xFF0000FF, argb[8 * SIZE + x], "Pixel " + x);
+		assertEquals(0, argb[2 * SIZE + 8]);
+	}
+
+
+	@Test
+	void transformsScaleStyledStrokes() {
+		SVG svg = TestDocuments.parse("<svg><path style=\"fill:none;stroke:#000;stroke-width:1\" d=\"M1 4H7\"/></svg>", new SVG.ParseOptions());
+		int[] argb = new int[SIZE * SIZE];
+		svg.render(argb, SIZE, SIZE, AffineTransform.getScaleInstance(2, 2), null);
+		assertEquals(0xFF000000, argb[7 * SIZE + 8]);
+		assertEquals(0xFF000000, argb[8 * SIZE + 8]);
+		assertEquals(0, argb[10 * SIZE + 8]);
+	}
+
+
+	private static int[] render(String paths, SVG.RenderOptions options) {
+		SVG svg = TestDocuments.parse("<svg>" + paths + "</svg>", new SVG.ParseOptions());
+		int[] argb = new int[SIZE * SIZE];
+		svg.render(argb, SIZE, SIZE, null, options);
+		return argb;
+	}
+
+
+	// Anti-aliasing is exact up to rounding of the sub-scanlines
+	private static void assertAlpha(int expected, int argb, String message) {
+		int alpha = argb >>> 24;
+		if(Math.abs(alpha - expected) > 2) assertEquals(expected, alpha, message);
+	}
+
+
+}
@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+
+/**
+ * Synthetic documents and comparisons of parsed paths shared by the tests.
+ */
+final class TestDocuments {
+
+
+	private TestDocuments() {}
+
+
+	/**
+	 * Returns a document with nested transformed groups and paths using every command, absolute and relative,
+	 * with numbers written in all forms the grammar allows. The same seed gives the same document.
+	 */
+	static String generate(long seed, int paths) {
+		Random random = new Random(seed);
+		StringBuilder svg = new StringBuilder("<?xml version=\"1.0\"?>\n<svg width=\"1000\" height=\"800\" viewBox=\"0 0 1000 800\" version=\"1.1\" id=\"root\">\n");
+		int depth = 0;
+		for(int x = 0;x < paths;x++) {
+			if(depth < 4 && random.nextInt(8) == 0) {
+				svg.append("<g transform=\"translate(").append(random.nextInt(50)).append(' ').append(random.nextInt(50)).append(") scale(").append(0.5 + random.nextInt(3) * 0.25).append(")\">\n");
+				depth++;
+			}
+			else if(depth > 0 && random.nextInt(8) == 0) {
+				svg.append("</g>\n");
+				depth--;
+			}
+			if(random.nextInt(20) == 0) svg.append("<!-- <path d=\"M0 0 L1 1\"/> -->\n");
+			svg.append("<path id=\"p").append(x).append("\" style=\"fill:#").append(String.format("%06x", random.nextInt(1 << 24))).append("\"");
+			if(random.nextInt(5) == 0) svg.append(" transform=\"rotate(").append(random.nextInt(90)).append(")\"");
+			svg.append(" d=\"").append(pathData(random)).append("\"/>\n");
+		}
+		while(depth-- > 0) svg.append("</g>\n");
+		return svg.append("</svg>\n").toString();
+	}
+
+
+	// Returns path data of a few random commands
+	private static String pathData(Random random) {
+		StringBuilder d = new StringBuilder("M").append(number(random, 900)).append(' ').append(number(random, 700));
+		int commands = 1 + random.nextInt(8);
+		for(int x = 0;x < commands;x++) {
+			switch(random.nextInt(7)) {
+			case 0: d.append('L').append(number(random, 900)).append(',').append(number(random, 700)); break;
+			case 1: d.append('l').append(number(random, 20)).append('-').append(number(random, 20)); break;
+			case 2: d.append('h').append(number(random, 30)).append('v').append(number(random, 30)); break;
+			case 3: d.append('C').append(number(random, 900)).append(' ').append(number(random, 700)).append(' ').append(number(random, 900)).append(' ').append(number(random, 700)).append(' ').append(number(random, 900)).append(' ').append(number(random, 700)); break;
+			case 4: d.append('q').append(number(random, 30)).append(' ').append(number(random, 30)).append(' ').append(number(random, 30)).append(' ').append(number(random, 30)); break;
+			case 5: d.append('a').append(5 + random.nextInt(20)).append(' ').append(5 + random.nextInt(20)).append(' ').append(random.nextInt(90)).append(' ').append(random.nextInt(2)).append(random.nextInt(2)).append(number(random, 30)).append(' ').append(number(random, 30)); break;
+			default: d.append('S').append(number(random, 900)).append(' ').append(number(random, 700)).append(' ').append(number(random, 900)).append(' ').append(number(random, 700)); break;
+			}
+		}
+		return random.nextBoolean() ? d.append('z').toString() : d.toString();
+	}
+
+
+	// Returns a number below the limit, written as an integer, a decimal or with an exponent
+	private static String number(Random random, int limit) {
+		double value = random.nextInt(limit * 100) / 100.0;
+		switch(random.nextInt(3)) {
+		case 0: return Integer.toString((int)value);
+		case 1: return Double.toString(value);
+		default: return value / 10 + "e1";
+		}
+	}
+
+
+	static SVG parse(String document, SVG.ParseOptions options) {
+		return new SVG(ByteBuffer.wrap(document.getBytes(StandardCharsets.UTF_8)), options);
+	}
+
+
+	/**
+	 * Checks that both arrays have paths with the same commands, transforms and attributes, in the same order.
+	 */
+	static void assertSamePaths(SVG.Path[] expected, SVG.Path[] actual) {
+		assertEquals(expected.length, actual.length, "Number of paths");
+		for(int x = 0;x < expected.length;x++) {
+			SVG.Path e = expected[x], a = actual[x];
+			assertEquals(e.getId(), a.getId(), "Id of path " + x);
+			assertEquals(e.getStyle(), a.getStyle(), "Style of path " + x);
+			assertEquals(e.getTransform(), a.getTransform(), "Transform of path " + x);
+			assertEquals(e.getCommandCount(), a.getCommandCount(), "Commands of path " + x);
+			for(int c = 0;c < e.getCommandCount();c++) {
+				assertEquals(e.getLetter(c), a.getLetter(c), "Letter of command " + c + " of path " + x);
+				double[] points = new double[e.getPointCount(c)];
+				double[] actualPoints = new double[a.getPointCount(c)];
+				for(int i = 0;i < points.length;i++) points[i] = e.getPoint(c, i);
+				for(int i = 0;i < actualPoints.length;i++) actualPoints[i] = a.getPoint(c, i);
+				assertArrayEquals(points, actualPoints, "Points of command " + c + " of path " + x);
+			}
+		}
+	}
+
+
+	/**
+	 * Returns every vertex of every polyline the SVG is drawn with, as text, so two drawings can be compared exactly.
+	 */
+	static String polylines(SVG svg, double tolerance) {
+		StringBuilder text = new StringBuilder();
+		svg.drawPolylines(tolerance, (xs, ys, count, closed) -> {
+			for(int x = 0;x < count;x++) text.append(xs[x]).append(',').append(ys[x]).append(' ');
+			text.append(closed ? "z\n" : "\n");
+		});
+		return text.toString();
+	}
+
+
+}